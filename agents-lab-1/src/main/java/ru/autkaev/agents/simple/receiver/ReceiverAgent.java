@@ -7,7 +7,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Получатель сообщений.
+ * Получатель сообщений. Отвечает "Pong" на любое сообщение, сохраняя его conversation-id и reply-with, что использует
+ * замер ping/pong агента-источника.
+ * <p>
+ * Необязательный аргумент запуска {@code batch-size=N} задает, сколько сообщений из очереди обрабатывается за один
+ * вызов поведения. С неверным значением агент не запускается.
  *
  * @author Anton Utkaev
  * @since 2022.06.10
@@ -16,24 +20,67 @@ public class ReceiverAgent extends Agent {
 
     private static final Logger LOG = LoggerFactory.getLogger(ReceiverAgent.class);
 
+    /**
+     * Префикс аргумента запуска с размером пачки сообщений.
+     */
+    public static final String BATCH_SIZE_ARGUMENT = "batch-size=";
+
+    private static final int DEFAULT_BATCH_SIZE = 32;
+
     @Override
     protected void setup() {
         LOG.debug("Agent {} is ready.", getAID().getName());
+        final int batchSize;
+        try {
+            batchSize = parseBatchSize(getArguments());
+        } catch (IllegalArgumentException e) {
+            LOG.error("Receiver {} not started: {}", getLocalName(), e.getMessage());
+            doDelete();
+            return;
+        }
         addBehaviour(new CyclicBehaviour(this) {
 
             public void action() {
-                final ACLMessage aclMessage = receive();
-                if (aclMessage != null) {
-                    LOG.debug("Agent {} received message: {}", myAgent.getLocalName(), aclMessage.getContent());
+                for (int processed = 0; processed < batchSize; processed++) {
+                    final ACLMessage aclMessage = receive();
+                    if (aclMessage == null) {
+                        block();
+                        return;
+                    }
+                    // на каждое сообщение замера запись в журнал дороже самой пересылки
+                    LOG.trace("Agent {} received message: {}", myAgent.getLocalName(), aclMessage.getContent());
 
                     final ACLMessage reply = aclMessage.createReply();
                     reply.setPerformative(ACLMessage.INFORM);
                     reply.setContent("Pong"); // Содержимое сообщения
                     send(reply); // отправляем сообщения
                 }
-                block();
             }
         });
     }
 
+    /**
+     * @throws IllegalArgumentException
+     *             если размер пачки не положительное число
+     */
+    private static int parseBatchSize(final Object[] args) {
+        if (args != null) {
+            for (final Object arg : args) {
+                final String value = String.valueOf(arg).trim();
+                if (value.startsWith(BATCH_SIZE_ARGUMENT)) {
+                    final int batchSize;
+                    try {
+                        batchSize = Integer.parseInt(value.substring(BATCH_SIZE_ARGUMENT.length()).trim());
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Batch size must be a number: " + value, e);
+                    }
+                    if (batchSize <= 0) {
+                        throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+                    }
+                    return batchSize;
+                }
+            }
+        }
+        return DEFAULT_BATCH_SIZE;
+    }
 }
@@ -0,0 +1,147 @@
+package ru.autkaev.agents.simple.source;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Параметры замера ping/pong, передаются агенту-источнику аргументами запуска вида {@code key=value}.
+ *
+ * @author Anton Utkaev
+ * @since 2026.10.18
+ */
+final class PingSettings {
+
+    /**
+     * Получатели создаются источником в его собственном контейнере.
+     */
+    static final String LOCAL_PLACEMENT = "local";
+
+    /**
+     * Получатели ищутся через AMS среди уже запущенных агентов, обычно в другом контейнере.
+     */
+    static final String REMOTE_PLACEMENT = "remote";
+
+    /**
+     * Размер содержимого ping в байтах.
+     */
+    private final int payload;
+
+    /**
+     * Количество получателей каждого ping.
+     */
+    private final int fanOut;
+
+    /**
+     * Отправляемых ping в секунду, считая каждого получателя.
+     */
+    private final int rate;
+
+    private final int warmupSeconds;
+
+    private final int durationSeconds;
+
+    /**
+     * {@link #LOCAL_PLACEMENT} или {@link #REMOTE_PLACEMENT}.
+     */
+    private final String placement;
+
+    /**
+     * Префикс локального имени получателей.
+     */
+    private final String receiverPrefix;
+
+    /**
+     * Размер пачки сообщений получателей, которых создает источник.
+     */
+    private final int receiverBatchSize;
+
+    private PingSettings(final Map<String, String> values) {
+        payload = positive(values, "payload", "16");
+        fanOut = positive(values, "fan-out", "1");
+        rate = positive(values, "rate", "1000");
+        warmupSeconds = Integer.parseInt(values.getOrDefault("warmup", "5"));
+        durationSeconds = positive(values, "duration", "30");
+        placement = values.getOrDefault("placement", LOCAL_PLACEMENT);
+        receiverPrefix = values.getOrDefault("receiver-prefix", "receiver");
+        receiverBatchSize = positive(values, "receiver-batch-size", "32");
+        if (!LOCAL_PLACEMENT.equals(placement) && !REMOTE_PLACEMENT.equals(placement)) {
+            throw new IllegalArgumentException("Unknown placement: " + placement);
+        }
+    }
+
+    /**
+     * @param args
+     *            аргументы запуска агента
+     * @throws IllegalArgumentException
+     *             если аргументы не удалось разобрать
+     */
+    static PingSettings parse(final Object[] args) {
+        final Map<String, String> values = new HashMap<>();
+        for (final Object arg : args) {
+            final String value = String.valueOf(arg).trim();
+            final int separator = value.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Expected key=value but got: " + value);
+            }
+            values.put(value.substring(0, separator).trim(), value.substring(separator + 1).trim());
+        }
+        try {
+            return new PingSettings(values);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid ping settings " + Arrays.toString(args), e);
+        }
+    }
+
+    private static int positive(final Map<String, String> values, final String key, final String defaultValue) {
+        final int value = Integer.parseInt(values.getOrDefault(key, defaultValue));
+        if (value <= 0) {
+            throw new IllegalArgumentException(key + " must be positive: " + value);
+        }
+        return value;
+    }
+
+    int getPayload() {
+        return payload;
+    }
+
+    int getFanOut() {
+        return fanOut;
+    }
+
+    int getRate() {
+        return rate;
+    }
+
+    int getWarmupSeconds() {
+        return warmupSeconds;
+    }
+
+    int getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    String getPlacement() {
+        return placement;
+    }
+
+    String getReceiverPrefix() {
+        return receiverPrefix;
+    }
+
+    int getReceiverBatchSize() {
+        return receiverBatchSize;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "[payload: %s], [fan-out: %s], [rate: %s], [warmup: %s], [duration: %s], [placement: %s]",
+                payload,
+                fanOut,
+                rate,
+                warmupSeconds,
+                durationSeconds,
+                placement);
+    }
+}
@@ -0,0 +1,101 @@
+package ru.autkaev.agents.simple.source;
+
+/**
+ * Гистограмма времени оборота сообщения в микросекундах.
+ * <p>
+ * Каждая степень двойки разбита на {@link #SUB_BUCKETS} равных корзин, поэтому погрешность значения не превышает
+ * 12,5% при постоянном объеме памяти и записи за константное время.
+ *
+ * @author Anton Utkaev
+ * @since 2026.10.18
+ */
+final class RttHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final long[] counts = new long[(Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS];
+
+    private long total;
+
+    private long sum;
+
+    private long max;
+
+    void record(final long micros) {
+        final long value = Math.max(micros, 0);
+        counts[index(value)]++;
+        total++;
+        sum += value;
+        max = Math.max(max, value);
+    }
+
+    long getTotal() {
+        return total;
+    }
+
+    long getMax() {
+        return max;
+    }
+
+    double getMean() {
+        return total == 0 ? 0 : (double) sum / total;
+    }
+
+    /**
+     * @param fraction
+     *            доля от {@code 0} до {@code 1}
+     * @return верхняя граница корзины, в которую попадает значение с заданной долей меньших значений
+     */
+    long percentile(final double fraction) {
+        final long rank = Math.max((long) Math.ceil(fraction * total), 1);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(lowerBound(i + 1) - 1, max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * @return непустые корзины по строке на корзину: границы, количество и полоса из {@code #}
+     */
+    String render() {
+        long largest = 0;
+        for (final long count : counts) {
+            largest = Math.max(largest, count);
+        }
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0) {
+                continue;
+            }
+            final int bar = (int) Math.max(1, counts[i] * 50 / largest);
+            builder.append(String.format("%n%10d - %-10d us %10d ", lowerBound(i), lowerBound(i + 1) - 1, counts[i]));
+            for (int j = 0; j < bar; j++) {
+                builder.append('#');
+            }
+        }
+        return builder.toString();
+    }
+
+    private static int index(final long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        final int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long lowerBound(final int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        final int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        return (long) (SUB_BUCKETS + index % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+    }
+}
@@ -3,19 +3,32 @@ package ru.autkaev.agents.simple.source;
 import jade.core.AID;
 import jade.core.Agent;
 import jade.core.behaviours.CyclicBehaviour;
+import jade.core.behaviours.TickerBehaviour;
 import jade.domain.AMSService;
 import jade.domain.FIPAException;
 import jade.domain.FIPAAgentManagement.AMSAgentDescription;
 import jade.domain.FIPAAgentManagement.SearchConstraints;
 import jade.lang.acl.ACLMessage;
+import jade.lang.acl.MessageTemplate;
+import jade.wrapper.ControllerException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import ru.autkaev.agents.simple.receiver.ReceiverAgent;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /**
  * Агент, который рассылает сообщения.
+ * <p>
+ * Без аргументов запуска агент один раз отправляет "Ping" всем агентам платформы. С аргументами вида
+ * {@code key=value} (см. {@link PingSettings}) агент замеряет пропускную способность и время оборота сообщений:
+ * рассылает ping с заданной частотой, размером и количеством получателей и по окончании выводит достигнутую частоту и
+ * гистограмму времени от отправки ping до получения pong.
  *
  * @author Anton Utkaev
  * @since 2022.06.11
@@ -24,9 +37,36 @@ public class SourceAgent extends Agent {
 
     private static final Logger LOG = LoggerFactory.getLogger(SourceAgent.class);
 
+    /**
+     * Идентификатор диалога замера. Ответы получателей сохраняют его, по нему же источник их и отбирает.
+     */
+    static final String PING_CONVERSATION_ID = "ping-benchmark";
+
+    /**
+     * Период отправки, мс. За каждый период отправляется столько ping, сколько нужно для заданной частоты.
+     */
+    private static final long PACING_PERIOD = 10;
+
+    /**
+     * Время ожидания ответов на последние ping после окончания замера, мс.
+     */
+    private static final long DRAIN_TIMEOUT = 2000;
+
     @Override
     protected void setup() {
         LOG.debug("Agent {} is ready.", getAID().getName());
+
+        final Object[] args = getArguments();
+        if (args != null && args.length > 0) {
+            try {
+                startBenchmark(PingSettings.parse(args));
+            } catch (IllegalArgumentException e) {
+                LOG.error("Ping benchmark not started: {}", e.getMessage());
+                doDelete();
+            }
+            return;
+        }
+
         addBehaviour(new CyclicBehaviour() {
 
             @Override
@@ -35,28 +75,215 @@ public class SourceAgent extends Agent {
 
                 if (message != null) {
                     LOG.debug("Agent {} received message: {}", myAgent.getLocalName(), message.getContent());
+                } else {
+                    block();
                 }
-                block();
             }
         });
 
-        final List<AMSAgentDescription> agentList;
+        searchAgents().forEach(amsAgentDescription -> {
+            final AID agentID = amsAgentDescription.getName();
+            final ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
+            msg.addReceiver(agentID); // id агента, которому отправляем сообщение
+            msg.setLanguage("English"); // Язык
+            msg.setContent("Ping"); // Содержимое сообщения
+            send(msg); // отправляем сообщение
+        });
+    }
+
+    private List<AMSAgentDescription> searchAgents() {
         final SearchConstraints constraints = new SearchConstraints();
         constraints.setMaxResults(-1L);
         try {
-            agentList = Arrays.asList(AMSService.search(this, new AMSAgentDescription(), constraints));
+            return Arrays.asList(AMSService.search(this, new AMSAgentDescription(), constraints));
         } catch (FIPAException e) {
             LOG.error(e.getMessage());
             throw new RuntimeException("Exception while searching AMS!", e);
         }
+    }
 
-        agentList.forEach(amsAgentDescription -> {
-            final AID agentID = amsAgentDescription.getName();
-            final ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
-            msg.addReceiver(agentID); // id агента, которому отправляем сообщение
-            msg.setLanguage("English"); // Язык
-            msg.setContent("Ping"); // Содержимое сообщения
-            send(msg); // отправляем сообщение
-        });
+    private void startBenchmark(final PingSettings settings) {
+        final List<AID> receivers = PingSettings.LOCAL_PLACEMENT.equals(settings.getPlacement())
+                ? createReceivers(settings)
+                : findReceivers(settings);
+        if (receivers.isEmpty()) {
+            throw new IllegalArgumentException("No receivers named " + settings.getReceiverPrefix() + "* found");
+        }
+        if (receivers.size() < settings.getFanOut()) {
+            LOG.warn("Only {} receivers available, fan-out {} reduced", receivers.size(), settings.getFanOut());
+        }
+        final List<AID> targets = receivers.subList(0, Math.min(settings.getFanOut(), receivers.size()));
+        LOG.info("Ping benchmark {} against {}",
+                settings,
+                targets.stream().map(AID::getLocalName).collect(Collectors.joining(", ")));
+
+        final PingBenchmark benchmark = new PingBenchmark(settings, targets);
+        addBehaviour(benchmark.new PongCollector());
+        addBehaviour(benchmark.new PingSender());
+    }
+
+    /**
+     * Создание получателей в контейнере источника.
+     */
+    private List<AID> createReceivers(final PingSettings settings) {
+        final List<AID> receivers = new ArrayList<>(settings.getFanOut());
+        for (int i = 0; i < settings.getFanOut(); i++) {
+            final String name = getLocalName() + "-" + settings.getReceiverPrefix() + "-" + i;
+            try {
+                getContainerController().createNewAgent(name,
+                        ReceiverAgent.class.getName(),
+                        new Object[] { ReceiverAgent.BATCH_SIZE_ARGUMENT + settings.getReceiverBatchSize() }).start();
+                receivers.add(new AID(name, AID.ISLOCALNAME));
+            } catch (ControllerException e) {
+                LOG.error("Failed to create receiver {}: {}", name, e.getMessage());
+            }
+        }
+        return receivers;
+    }
+
+    /**
+     * Поиск уже запущенных получателей по префиксу имени.
+     */
+    private List<AID> findReceivers(final PingSettings settings) {
+        return searchAgents().stream()
+                .map(AMSAgentDescription::getName)
+                .filter(aid -> aid.getLocalName().startsWith(settings.getReceiverPrefix()))
+                .sorted(Comparator.comparing(AID::getLocalName))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Состояние одного замера. Время отправки ping передается в reply-with и возвращается получателем в in-reply-to,
+     * поэтому время оборота считается по часам источника без отдельного учета отправленных ping.
+     */
+    private final class PingBenchmark {
+
+        private final PingSettings settings;
+
+        private final List<AID> targets;
+
+        private final byte[] payload;
+
+        private final RttHistogram histogram = new RttHistogram();
+
+        private final long start = System.nanoTime();
+
+        private final long measureStart;
+
+        private final long measureEnd;
+
+        /**
+         * Все отправленные ping, включая разогрев.
+         */
+        private long sentTotal;
+
+        /**
+         * Ping, отправленные за время замера.
+         */
+        private long sent;
+
+        PingBenchmark(final PingSettings settings, final List<AID> targets) {
+            this.settings = settings;
+            this.targets = targets;
+            this.payload = new byte[settings.getPayload()];
+            Arrays.fill(payload, (byte) 'p');
+            this.measureStart = start + TimeUnit.SECONDS.toNanos(settings.getWarmupSeconds());
+            this.measureEnd = measureStart + TimeUnit.SECONDS.toNanos(settings.getDurationSeconds());
+        }
+
+        private boolean isMeasured(final long sentAt) {
+            return sentAt >= measureStart && sentAt < measureEnd;
+        }
+
+        private void report() {
+            final double seconds = settings.getDurationSeconds();
+            final long received = histogram.getTotal();
+            LOG.info("Ping benchmark finished: {}\n"
+                            + "Sent {} pings ({} msg/s), received {} pongs ({} msg/s), lost or late {}\n"
+                            + "RTT, us: mean = {}, p50 = {}, p90 = {}, p99 = {}, p99.9 = {}, max = {}{}",
+                    settings,
+                    sent,
+                    String.format("%.1f", sent / seconds),
+                    received,
+                    String.format("%.1f", received / seconds),
+                    sent - received,
+                    String.format("%.1f", histogram.getMean()),
+                    histogram.percentile(0.5),
+                    histogram.percentile(0.9),
+                    histogram.percentile(0.99),
+                    histogram.percentile(0.999),
+                    histogram.getMax(),
+                    histogram.render());
+        }
+
+        /**
+         * Отправка ping с заданной частотой до окончания замера и вывод результата после ожидания последних pong.
+         */
+        private final class PingSender extends TickerBehaviour {
+
+            PingSender() {
+                super(SourceAgent.this, PACING_PERIOD);
+            }
+
+            @Override
+            protected void onTick() {
+                final long now = System.nanoTime();
+                if (now < measureEnd) {
+                    final long due = (now - start) * settings.getRate() / TimeUnit.SECONDS.toNanos(1);
+                    while (sentTotal < due) {
+                        sendPing();
+                    }
+                } else if (now - measureEnd >= TimeUnit.MILLISECONDS.toNanos(DRAIN_TIMEOUT)) {
+                    report();
+                    stop();
+                    myAgent.doDelete();
+                }
+            }
+
+            private void sendPing() {
+                final long sentAt = System.nanoTime();
+                final ACLMessage ping = new ACLMessage(ACLMessage.INFORM);
+                targets.forEach(ping::addReceiver);
+                ping.setConversationId(PING_CONVERSATION_ID);
+                ping.setReplyWith(Long.toString(sentAt));
+                ping.setByteSequenceContent(payload);
+                send(ping);
+                sentTotal += targets.size();
+                if (isMeasured(sentAt)) {
+                    sent += targets.size();
+                }
+            }
+        }
+
+        /**
+         * Прием pong и запись времени оборота для ping, отправленных за время замера.
+         */
+        private final class PongCollector extends CyclicBehaviour {
+
+            private final MessageTemplate messageTemplate = MessageTemplate.MatchConversationId(PING_CONVERSATION_ID);
+
+            PongCollector() {
+                super(SourceAgent.this);
+            }
+
+            @Override
+            public void action() {
+                ACLMessage pong;
+                while ((pong = receive(messageTemplate)) != null) {
+                    final long receivedAt = System.nanoTime();
+                    final long sentAt;
+                    try {
+                        sentAt = Long.parseLong(pong.getInReplyTo());
+                    } catch (NumberFormatException e) {
+                        LOG.warn("Unexpected reply from {}", pong.getSender().getName());
+                        continue;
+                    }
+                    if (isMeasured(sentAt)) {
+                        histogram.record(TimeUnit.NANOSECONDS.toMicros(receivedAt - sentAt));
+                    }
+                }
+                block();
+            }
+        }
     }
 }
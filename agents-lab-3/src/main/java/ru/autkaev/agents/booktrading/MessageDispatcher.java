@@ -0,0 +1,193 @@
+package ru.autkaev.agents.booktrading;
+
+import jade.core.Agent;
+import jade.core.behaviours.CyclicBehaviour;
+import jade.lang.acl.ACLMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.function.Consumer;
+
+/**
+ * The only behaviour of an agent that takes messages from its queue. Every message is received once and passed to the
+ * handler found in a table built at agent start-up by performative and conversation-id, instead of every behaviour
+ * scanning the queue with its own template.
+ * <p>
+ * A handler registered with a conversation-id takes precedence over a handler of the same performative without one.
+ * Messages without a handler are dropped.
+ * <p>
+ * Every call of the behaviour moves the whole agent queue to per-priority queues of the handlers and handles messages
+ * starting from the most urgent priority, so that e.g. purchase orders are served before pending calls for proposal
+ * even if they arrived later.
+ *
+ * @author Anton Utkaev
+ * @since 2026.10.18
+ */
+public class MessageDispatcher extends CyclicBehaviour {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MessageDispatcher.class);
+
+    /**
+     * Messages handled in one call of the behaviour when no batch size is given.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 32;
+
+    /**
+     * Messages handled in one call of the behaviour before yielding to the scheduler.
+     */
+    private final int batchSize;
+
+    /**
+     * Messages taken from the agent queue but not handled yet, by handler priority.
+     */
+    private final Map<Priority, Queue<Delivery>> pending = new EnumMap<>(Priority.class);
+
+    /**
+     * Handlers by performative for any conversation-id.
+     */
+    private final Map<Integer, Route> routes = new HashMap<>();
+
+    /**
+     * Handlers by conversation-id and performative.
+     */
+    private final Map<String, Map<Integer, Route>> conversationRoutes = new HashMap<>();
+
+    public MessageDispatcher(final Agent agent) {
+        this(agent, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param agent
+     *            the agent whose messages are dispatched
+     * @param batchSize
+     *            messages handled in one call of the behaviour
+     */
+    public MessageDispatcher(final Agent agent, final int batchSize) {
+        super(agent);
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        this.batchSize = batchSize;
+        for (final Priority priority : Priority.values()) {
+            pending.put(priority, new ArrayDeque<>());
+        }
+    }
+
+    /**
+     * Register the handler of messages with the given performative and any conversation-id.
+     *
+     * @return this dispatcher
+     */
+    public MessageDispatcher register(final int performative, final Consumer<ACLMessage> handler) {
+        return register(performative, Priority.NORMAL, handler);
+    }
+
+    /**
+     * Register the handler of messages with the given performative and any conversation-id, handled in the order of
+     * the given priority.
+     *
+     * @return this dispatcher
+     */
+    public MessageDispatcher register(final int performative,
+            final Priority priority,
+            final Consumer<ACLMessage> handler) {
+        routes.put(performative, new Route(priority, handler));
+        return this;
+    }
+
+    /**
+     * Register the handler of messages with the given performative in the given conversation.
+     *
+     * @return this dispatcher
+     */
+    public MessageDispatcher register(final int performative,
+            final String conversationId,
+            final Consumer<ACLMessage> handler) {
+        conversationRoutes.computeIfAbsent(conversationId, id -> new HashMap<>())
+                .put(performative, new Route(Priority.NORMAL, handler));
+        return this;
+    }
+
+    @Override
+    public void action() {
+        ACLMessage aclMessage;
+        while ((aclMessage = myAgent.receive()) != null) {
+            enqueue(aclMessage);
+        }
+        int processed = 0;
+        for (final Queue<Delivery> deliveries : pending.values()) {
+            Delivery delivery;
+            while (processed < batchSize && (delivery = deliveries.poll()) != null) {
+                delivery.route.handler.accept(delivery.message);
+                processed++;
+            }
+        }
+        if (processed < batchSize) {
+            block();
+        }
+        // otherwise messages may be left: yield to other behaviours without blocking
+    }
+
+    private void enqueue(final ACLMessage aclMessage) {
+        final Route route = findRoute(aclMessage);
+        if (route != null) {
+            pending.get(route.priority).add(new Delivery(aclMessage, route));
+        } else {
+            LOG.debug("Agent {} dropped unexpected {} from {}",
+                    myAgent.getLocalName(),
+                    ACLMessage.getPerformative(aclMessage.getPerformative()),
+                    aclMessage.getSender() != null ? aclMessage.getSender().getName() : null);
+        }
+    }
+
+    private Route findRoute(final ACLMessage aclMessage) {
+        final String conversationId = aclMessage.getConversationId();
+        if (conversationId != null) {
+            final Map<Integer, Route> conversation = conversationRoutes.get(conversationId);
+            if (conversation != null) {
+                final Route route = conversation.get(aclMessage.getPerformative());
+                if (route != null) {
+                    return route;
+                }
+            }
+        }
+        return routes.get(aclMessage.getPerformative());
+    }
+
+    /**
+     * Handler priorities, most urgent first.
+     */
+    public enum Priority {
+        HIGH,
+        NORMAL
+    }
+
+    private static final class Route {
+
+        private final Priority priority;
+
+        private final Consumer<ACLMessage> handler;
+
+        Route(final Priority priority, final Consumer<ACLMessage> handler) {
+            this.priority = priority;
+            this.handler = handler;
+        }
+    }
+
+    private static final class Delivery {
+
+        private final ACLMessage message;
+
+        private final Route route;
+
+        Delivery(final ACLMessage message, final Route route) {
+            this.message = message;
+            this.route = route;
+        }
+    }
+}
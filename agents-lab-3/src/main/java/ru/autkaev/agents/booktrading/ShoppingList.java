@@ -0,0 +1,95 @@
+package ru.autkaev.agents.booktrading;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The content of book trading messages, so that one round trip to a seller covers a whole shopping list.
+ * <p>
+ * A CFP, an ACCEPT_PROPOSAL and an INFORM confirming the purchase carry titles, one per line. A PROPOSE carries one
+ * line per title of the CFP, in the same order: {@code price;offered title} or an empty line if the seller has nothing
+ * close to that title. The offered title may differ from the requested one.
+ *
+ * @author Anton Utkaev
+ * @since 2026.10.18
+ */
+public final class ShoppingList {
+
+    private static final String LINE_SEPARATOR = "\n";
+
+    private static final char PRICE_SEPARATOR = ';';
+
+    private ShoppingList() {
+    }
+
+    public static String encodeTitles(final List<String> titles) {
+        return String.join(LINE_SEPARATOR, titles);
+    }
+
+    /**
+     * @return the non-blank titles of the message, trimmed
+     */
+    public static List<String> decodeTitles(final String content) {
+        if (content == null) {
+            return new ArrayList<>();
+        }
+        return Arrays.stream(content.split(LINE_SEPARATOR))
+                .map(String::trim)
+                .filter(title -> !title.isEmpty())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @param offers
+     *            an offer per requested title, {@code null} if the title is not available
+     */
+    public static String encodeOffers(final List<Offer> offers) {
+        return offers.stream().map(ShoppingList::encodeOffer).collect(Collectors.joining(LINE_SEPARATOR));
+    }
+
+    private static String encodeOffer(final Offer offer) {
+        return offer != null ? String.valueOf(offer.getPrice()) + PRICE_SEPARATOR + offer.getTitle() : "";
+    }
+
+    /**
+     * @return an offer per requested title, {@code null} if the title is not available
+     * @throws NumberFormatException
+     *             if a price is malformed
+     */
+    public static List<Offer> decodeOffers(final String content) {
+        final List<Offer> offers = new ArrayList<>();
+        // -1 keeps the trailing empty lines of unavailable titles
+        for (final String line : content.split(LINE_SEPARATOR, -1)) {
+            final int separator = line.indexOf(PRICE_SEPARATOR);
+            offers.add(separator > 0
+                    ? new Offer(line.substring(separator + 1), Double.parseDouble(line.substring(0, separator)))
+                    : null);
+        }
+        return offers;
+    }
+
+    /**
+     * A book offered by a seller.
+     */
+    public static final class Offer {
+
+        private final String title;
+
+        private final double price;
+
+        public Offer(final String title, final double price) {
+            this.title = title;
+            this.price = price;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public double getPrice() {
+            return price;
+        }
+    }
+}
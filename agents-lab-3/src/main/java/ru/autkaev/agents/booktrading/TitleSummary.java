@@ -0,0 +1,176 @@
+package ru.autkaev.agents.booktrading;
+
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A compact summary of the titles a seller carries, advertised in its DF service description so that buyers do not
+ * send a CFP to sellers that certainly have nothing close to the requested titles.
+ * <p>
+ * The summary is a Bloom filter of the three-character substrings of the lower-cased titles. Sellers also propose
+ * titles within a small edit distance of the requested one (see {@link #maxEditDistance(String)}), and every edit
+ * changes at most three substrings, so a title is ruled out only when too few of its substrings are in the filter for
+ * any close title to exist. A summary may let through a seller without the title, but never rules out one with it.
+ *
+ * @author Anton Utkaev
+ * @since 2026.10.18
+ */
+public final class TitleSummary {
+
+    /**
+     * The name of the service description property with the encoded summary.
+     */
+    public static final String PROPERTY = "title-trigrams";
+
+    /**
+     * The largest edit distance between a requested title and a proposed one.
+     */
+    private static final int MAX_EDIT_DISTANCE = 2;
+
+    /**
+     * One edit is allowed per this many characters of the request, so that short requests do not turn into unrelated
+     * books.
+     */
+    private static final int CHARACTERS_PER_EDIT = 4;
+
+    private static final int GRAM = 3;
+
+    /**
+     * Bits per substring, which with {@link #HASHES} hash functions gives about one false positive in a hundred.
+     */
+    private static final int BITS_PER_GRAM = 10;
+
+    private static final int HASHES = 7;
+
+    private static final int MIN_BITS = 64;
+
+    /**
+     * The largest filter, 8 KB, to keep the DF description small. Bigger catalogues get more false positives.
+     */
+    private static final int MAX_BITS = 1 << 16;
+
+    private final long[] bits;
+
+    private TitleSummary(final long[] bits) {
+        this.bits = bits;
+    }
+
+    /**
+     * @param title
+     *            the requested title in lower case
+     * @return how many characters may be inserted, deleted or replaced in the title to match a book for sale
+     */
+    public static int maxEditDistance(final String title) {
+        return Math.min(MAX_EDIT_DISTANCE, title.length() / CHARACTERS_PER_EDIT);
+    }
+
+    /**
+     * @param titles
+     *            the titles for sale in lower case
+     */
+    public static TitleSummary of(final Iterable<String> titles) {
+        final Set<Long> grams = new HashSet<>();
+        for (final String title : titles) {
+            for (int i = 0; i + GRAM <= title.length(); i++) {
+                grams.add(gram(title, i));
+            }
+        }
+        final long wanted = (long) grams.size() * BITS_PER_GRAM;
+        int size = MIN_BITS;
+        while (size < wanted && size < MAX_BITS) {
+            size <<= 1;
+        }
+        final TitleSummary summary = new TitleSummary(new long[size / Long.SIZE]);
+        grams.forEach(summary::add);
+        return summary;
+    }
+
+    /**
+     * @param encoded
+     *            the value of the {@link #PROPERTY} property
+     * @throws IllegalArgumentException
+     *             if the value is not a summary
+     */
+    public static TitleSummary decode(final String encoded) {
+        final byte[] bytes = Base64.getDecoder().decode(encoded);
+        final int words = bytes.length / Long.BYTES;
+        if (words == 0 || bytes.length % Long.BYTES != 0 || Integer.bitCount(words) != 1) {
+            throw new IllegalArgumentException("Malformed title summary of " + bytes.length + " bytes");
+        }
+        final long[] bits = new long[words];
+        for (int i = 0; i < bytes.length; i++) {
+            bits[i / Long.BYTES] |= (bytes[i] & 0xFFL) << (i % Long.BYTES * Byte.SIZE);
+        }
+        return new TitleSummary(bits);
+    }
+
+    public String encode() {
+        final byte[] bytes = new byte[bits.length * Long.BYTES];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (bits[i / Long.BYTES] >>> (i % Long.BYTES * Byte.SIZE));
+        }
+        return Base64.getEncoder().encodeToString(bytes);
+    }
+
+    /**
+     * @return {@code false} if the seller certainly has no book with this or a close title
+     */
+    public boolean mayOffer(final String title) {
+        final String key = title.toLowerCase();
+        final int grams = key.length() - GRAM + 1;
+        final int required = grams - GRAM * maxEditDistance(key);
+        if (required <= 0) {
+            return true;
+        }
+        int found = 0;
+        for (int i = 0; i < grams; i++) {
+            if (contains(gram(key, i)) && ++found >= required) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void add(final long gram) {
+        final long hash = mix(gram);
+        final int mask = bits.length * Long.SIZE - 1;
+        for (int i = 0; i < HASHES; i++) {
+            final int bit = hashAt(hash, i) & mask;
+            bits[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    private boolean contains(final long gram) {
+        final long hash = mix(gram);
+        final int mask = bits.length * Long.SIZE - 1;
+        for (int i = 0; i < HASHES; i++) {
+            final int bit = hashAt(hash, i) & mask;
+            if ((bits[bit >>> 6] & 1L << bit) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The {@code i}-th hash function derived from the two halves of one 64-bit hash.
+     */
+    private static int hashAt(final long hash, final int i) {
+        return (int) hash + i * ((int) (hash >>> 32) | 1);
+    }
+
+    private static long gram(final String value, final int from) {
+        return (long) value.charAt(from) << 32 | (long) value.charAt(from + 1) << 16 | value.charAt(from + 2);
+    }
+
+    /**
+     * The finalizer of SplitMix64.
+     */
+    private static long mix(final long value) {
+        long z = value + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
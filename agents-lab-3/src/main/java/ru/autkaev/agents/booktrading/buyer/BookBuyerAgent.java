@@ -6,24 +6,36 @@ import static ru.autkaev.agents.booktrading.DescriptionTypes.BOOK_TRADE_CONVERSA
 import jade.core.AID;
 import jade.core.Agent;
 import jade.core.behaviours.Behaviour;
+import jade.core.behaviours.CyclicBehaviour;
 import jade.core.behaviours.TickerBehaviour;
 import jade.domain.DFService;
 import jade.domain.FIPAException;
 import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.domain.FIPAAgentManagement.Property;
 import jade.domain.FIPAAgentManagement.ServiceDescription;
 import jade.lang.acl.ACLMessage;
 import jade.lang.acl.MessageTemplate;
+import jade.proto.SubscriptionInitiator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import ru.autkaev.agents.booktrading.ShoppingList;
+import ru.autkaev.agents.booktrading.TitleSummary;
 
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
 /**
- * Агент покупателя.
+ * Агент покупателя. Аргументы запуска - список покупок: названия книг, которые запрашиваются у продавцов одним CFP.
  *
  * @author Anton Utkaev
  * @since 2022.06.12
@@ -33,47 +45,76 @@ public class BookBuyerAgent extends Agent {
     private static final Logger LOG = LoggerFactory.getLogger(BookBuyerAgent.class);
 
     /**
-     * The title of the book to buy
+     * How long sellers are waited for, in milliseconds.
      */
-    private String targetBookTitle;
+    private static final long REPLY_TIMEOUT = 5000;
 
     /**
-     * The list of known seller agents.
+     * The titles of the books still to buy
      */
-    private final List<AID> sellerAgents = new ArrayList<>();
+    private final Set<String> targetBookTitles = new LinkedHashSet<>();
+
+    /**
+     * The set of known seller agents, kept up to date by the DF subscription.
+     */
+    private final Set<AID> sellerAgents = new LinkedHashSet<>();
+
+    /**
+     * The catalogue summaries the sellers advertise in the yellow pages. Sellers without one are asked for any title.
+     */
+    private final Map<AID, TitleSummary> sellerSummaries = new HashMap<>();
+
+    private SubscriptionInitiator sellerSubscription;
+
+    /**
+     * The reply-with of the message the running negotiation is waiting replies for.
+     */
+    private String activeReplyWith;
+
+    private boolean requestInProgress;
 
     @Override
     protected void setup() {
         // Printout a welcome message
         LOG.info("Hello! Buyer-agent {} is ready.", getAID().getName());
 
-        // Get the title of the book to buy as a start-up argument
+        // Get the titles of the books to buy as start-up arguments
         final Object[] args = getArguments();
         if (args != null && args.length > 0) {
-            this.targetBookTitle = (String) args[0];
-            LOG.info("Target book is {}", targetBookTitle);
+            for (final Object arg : args) {
+                targetBookTitles.add(String.valueOf(arg).trim());
+            }
+            LOG.info("Target books are {}", targetBookTitles);
+
+            // Subscribe to the DF so that the set of sellers is updated incrementally instead of being polled
+            final DFAgentDescription agentDescription = new DFAgentDescription();
+            final ServiceDescription serviceDescription = new ServiceDescription();
+            serviceDescription.setType(BOOK_SELLING_DESC_TYPE);
+            agentDescription.addServices(serviceDescription);
+            sellerSubscription = new SubscriptionInitiator(this,
+                    DFService.createSubscriptionMessage(this, getDefaultDF(), agentDescription, null)) {
+
+                @Override
+                protected void handleInform(final ACLMessage inform) {
+                    updateSellerAgents(inform);
+                }
+            };
+            addBehaviour(sellerSubscription);
+            addBehaviour(new LateRepliesCleaner());
 
             // Add a TickerBehaviour that schedules a request to seller agents every 10 sec
             addBehaviour(new TickerBehaviour(this, 10000) {
 
                 @Override
                 protected void onTick() {
-                    LOG.info("Trying to buy {}", targetBookTitle);
-                    // Update the list of seller agents
-                    final DFAgentDescription agentDescription = new DFAgentDescription();
-                    final ServiceDescription serviceDescription = new ServiceDescription();
-                    serviceDescription.setType(BOOK_SELLING_DESC_TYPE);
-                    agentDescription.addServices(serviceDescription);
-                    final List<DFAgentDescription> searchResult = new ArrayList<>();
-                    try {
-                        searchResult.addAll(Arrays.asList(DFService.search(myAgent, agentDescription)));
-                    } catch (FIPAException fe) {
-                        LOG.error(fe.getMessage());
-                        fe.printStackTrace();
+                    if (sellerAgents.isEmpty()) {
+                        LOG.info("No seller agents known yet");
+                        return;
+                    }
+                    if (requestInProgress) {
+                        return;
                     }
-                    searchResult.forEach(dfAgentDescription -> sellerAgents.add(dfAgentDescription.getName()));
-                    LOG.info("Found the following seller agents: {}",
-                            sellerAgents.stream().map(AID::getName).collect(Collectors.joining(", ")));
+                    LOG.info("Trying to buy {}", targetBookTitles);
 
                     // Perform the request
                     myAgent.addBehaviour(new BookBuyerAgent.RequestPerformer());
@@ -86,39 +127,141 @@ public class BookBuyerAgent extends Agent {
         }
     }
 
+    /**
+     * Update the set of sellers and their catalogue summaries from a DF notification. A seller without the
+     * book-selling service in the notification has deregistered or changed its services.
+     */
+    private void updateSellerAgents(final ACLMessage inform) {
+        try {
+            for (final DFAgentDescription description : DFService.decodeNotification(inform.getContent())) {
+                final ServiceDescription service = findService(description, BOOK_SELLING_DESC_TYPE);
+                if (service != null) {
+                    sellerAgents.add(description.getName());
+                    sellerSummaries.put(description.getName(), summaryOf(service));
+                } else {
+                    sellerAgents.remove(description.getName());
+                    sellerSummaries.remove(description.getName());
+                }
+            }
+        } catch (FIPAException fe) {
+            LOG.error(fe.getMessage());
+            fe.printStackTrace();
+        }
+        LOG.info("Known seller agents: {}", sellerAgents.stream().map(AID::getName).collect(Collectors.joining(", ")));
+    }
+
+    private static ServiceDescription findService(final DFAgentDescription description, final String type) {
+        final Iterator<?> services = description.getAllServices();
+        while (services.hasNext()) {
+            final ServiceDescription service = (ServiceDescription) services.next();
+            if (type.equals(service.getType())) {
+                return service;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the catalogue summary of the service or {@code null} if the seller does not advertise one
+     */
+    private static TitleSummary summaryOf(final ServiceDescription service) {
+        final Iterator<?> properties = service.getAllProperties();
+        while (properties.hasNext()) {
+            final Property property = (Property) properties.next();
+            if (TitleSummary.PROPERTY.equals(property.getName())) {
+                try {
+                    return TitleSummary.decode(String.valueOf(property.getValue()));
+                } catch (IllegalArgumentException e) {
+                    LOG.warn("Ignoring the catalogue summary of {}: {}", service.getName(), e.getMessage());
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the sellers that may have any of the titles according to their catalogue summaries
+     */
+    private Set<AID> sellersFor(final List<String> titles) {
+        final Set<AID> sellers = new LinkedHashSet<>();
+        for (final AID seller : sellerAgents) {
+            final TitleSummary summary = sellerSummaries.get(seller);
+            if (summary == null || titles.stream().anyMatch(summary::mayOffer)) {
+                sellers.add(seller);
+            }
+        }
+        return sellers;
+    }
+
     @Override
     protected void takeDown() {
+        if (sellerSubscription != null) {
+            sellerSubscription.cancel(getDefaultDF(), true);
+        }
         // Printout a dismissal message
         LOG.info("Buyer-agent {} terminating.", getAID().getName());
     }
 
     /**
      * Inner class RequestPerformer. This is the behaviour used by Book-buyer agents to request seller agents the target
-     * book.
+     * books.
+     * <p>
+     * One CFP carries the whole shopping list and goes only to the sellers whose catalogue summaries do not rule out
+     * every title of it. Proposals are collected until every seller has answered or the reply-by
+     * deadline expires, then for every title the best offer received so far is accepted. The orders are split across
+     * sellers, one ACCEPT_PROPOSAL per seller with all the titles bought from it. Sellers that did not answer in time
+     * are not waited for; the titles not bought are requested again in the next round.
+     * <p>
+     * A seller may propose a book with a title close to the requested one; the order names the title it proposed. An
+     * offer of the requested title itself beats any offer of a close one, whatever the prices.
      */
     private class RequestPerformer extends Behaviour {
 
-        private AID bestSeller; // The agent who provides the best offer
+        private List<String> titles; // The titles requested in this round
 
-        private double bestPrice; // The best offered price
+        private AID[] bestSellers; // The agents who provide the best offer per title
 
-        private int step = 0;
+        private ShoppingList.Offer[] bestOffers; // The best offer per title
 
-        public void action() {
+        private final Set<AID> pendingSellers = new HashSet<>(); // Sellers that have not replied yet
+
+        // Offered titles mapped to the requested ones, per seller the order is sent to
+        private final Map<AID, Map<String, String>> orders = new LinkedHashMap<>();
 
-            int repliesCnt = 0; // The counter of replies from seller agents
+        private MessageTemplate messageTemplate; // The template to receive replies
 
-            MessageTemplate messageTemplate = null; // The template to receive replies
+        private long deadline; // The moment after which replies are no longer awaited
 
+        private int step = 0;
+
+        @Override
+        public void onStart() {
+            requestInProgress = true;
+        }
+
+        public void action() {
             switch (step) {
                 case 0:
                     // Send the aclMessage to all sellers
+                    titles = new ArrayList<>(targetBookTitles);
+                    bestSellers = new AID[titles.size()];
+                    bestOffers = new ShoppingList.Offer[titles.size()];
+                    final Set<AID> sellers = sellersFor(titles);
+                    if (sellers.isEmpty()) {
+                        LOG.info("No seller carries anything close to {}", titles);
+                        step = 2;
+                        break;
+                    }
                     final ACLMessage aclMessage = new ACLMessage(ACLMessage.CFP);
-                    sellerAgents.forEach(aclMessage::addReceiver);
+                    sellers.forEach(aclMessage::addReceiver);
+                    pendingSellers.addAll(sellers);
 
-                    aclMessage.setContent(targetBookTitle);
+                    aclMessage.setContent(ShoppingList.encodeTitles(titles));
                     aclMessage.setConversationId(BOOK_TRADE_CONVERSATION_ID);
                     aclMessage.setReplyWith("aclMessage " + UUID.randomUUID().toString().substring(0, 4));
+                    deadline = System.currentTimeMillis() + REPLY_TIMEOUT;
+                    aclMessage.setReplyByDate(new Date(deadline));
+                    activeReplyWith = aclMessage.getReplyWith();
                     myAgent.send(aclMessage);
 
                     // Prepare the template to get proposals
@@ -131,70 +274,185 @@ public class BookBuyerAgent extends Agent {
                     // Receive all proposals/refusals from seller agents
                     ACLMessage reply = myAgent.receive(messageTemplate);
                     if (reply != null) {
-                        // Reply received
-                        if (Integer.valueOf(ACLMessage.PROPOSE).equals(reply.getPerformative())) {
+                        // Reply received, duplicates and replies from unknown agents are ignored
+                        if (pendingSellers.remove(reply.getSender())
+                                && Integer.valueOf(ACLMessage.PROPOSE).equals(reply.getPerformative())) {
                             // This is an offer
-                            double price = Double.parseDouble(reply.getContent());
-                            if (bestSeller == null || price < bestPrice) {
-                                // This is the best offer at present
-                                bestPrice = price;
-                                bestSeller = reply.getSender();
-                            }
+                            collectOffers(reply);
                         }
-                        repliesCnt++;
-                        if (repliesCnt >= sellerAgents.size()) {
+                        if (pendingSellers.isEmpty()) {
                             // We received all replies
                             step = 2;
                         }
-                    } else {
-                        block();
+                    } else if (!awaitUntilDeadline()) {
+                        LOG.info("Reply deadline expired, {} seller(s) did not answer", pendingSellers.size());
+                        step = 2;
                     }
                     break;
                 case 2:
-                    // Send the purchase order to the seller that provided the best offer
-                    final ACLMessage order = new ACLMessage(ACLMessage.ACCEPT_PROPOSAL);
-                    order.addReceiver(bestSeller);
-                    order.setContent(targetBookTitle);
-                    order.setConversationId(BOOK_TRADE_CONVERSATION_ID);
-                    order.setReplyWith("aclMessage " + UUID.randomUUID().toString().substring(0, 4));
-                    myAgent.send(order);
-
-                    // Prepare the template to get the purchase order reply
+                    // Send the purchase orders to the sellers that provided the best offers
+                    for (int i = 0; i < titles.size(); i++) {
+                        if (bestSellers[i] != null) {
+                            orders.computeIfAbsent(bestSellers[i], seller -> new LinkedHashMap<>())
+                                    .put(bestOffers[i].getTitle(), titles.get(i));
+                        }
+                    }
+                    final String replyWith = "aclMessage " + UUID.randomUUID().toString().substring(0, 4);
+                    deadline = System.currentTimeMillis() + REPLY_TIMEOUT;
+                    pendingSellers.clear();
+                    orders.forEach((seller, orderedTitles) -> {
+                        final ACLMessage order = new ACLMessage(ACLMessage.ACCEPT_PROPOSAL);
+                        order.addReceiver(seller);
+                        order.setContent(ShoppingList.encodeTitles(new ArrayList<>(orderedTitles.keySet())));
+                        order.setConversationId(BOOK_TRADE_CONVERSATION_ID);
+                        order.setReplyWith(replyWith);
+                        order.setReplyByDate(new Date(deadline));
+                        myAgent.send(order);
+                        pendingSellers.add(seller);
+                    });
+                    activeReplyWith = replyWith;
+
+                    // Prepare the template to get the purchase order replies
                     messageTemplate =
                             MessageTemplate.and(MessageTemplate.MatchConversationId(BOOK_TRADE_CONVERSATION_ID),
-                                    MessageTemplate.MatchInReplyTo(order.getReplyWith()));
+                                    MessageTemplate.MatchInReplyTo(replyWith));
 
                     step = 3;
                     break;
                 case 3:
-                    // Receive the purchase order reply
+                    // Receive the purchase order replies
                     reply = myAgent.receive(messageTemplate);
                     if (reply != null) {
                         // Purchase order reply received
-                        if (Integer.valueOf(ACLMessage.INFORM).equals(reply.getPerformative())) {
-                            // Purchase successful. We can terminate
-                            LOG.info("{} successfully purchased from agent {}\nPrice = {}",
-                                    targetBookTitle,
-                                    reply.getSender().getName(),
-                                    bestPrice);
-                            myAgent.doDelete();
-                        } else {
-                            LOG.info("Attempt failed: requested book already sold.");
+                        if (pendingSellers.remove(reply.getSender())) {
+                            if (Integer.valueOf(ACLMessage.INFORM).equals(reply.getPerformative())) {
+                                completePurchase(reply);
+                            } else {
+                                LOG.info("Attempt failed: books ordered from {} already sold.",
+                                        reply.getSender().getName());
+                            }
                         }
+                        if (pendingSellers.isEmpty()) {
+                            step = 4;
+                        }
+                    } else if (!awaitUntilDeadline()) {
+                        LOG.info("Attempt failed: {} seller(s) did not confirm the purchase in time",
+                                pendingSellers.size());
                         step = 4;
-                    } else {
-                        block();
+                    }
+                    if (step == 4 && targetBookTitles.isEmpty()) {
+                        // All the books are bought. We can terminate
+                        myAgent.doDelete();
                     }
                     break;
             }
         }
 
+        /**
+         * Keep the offers of the seller that are better than the ones received before: an exact title before a close
+         * one, then the lower price.
+         */
+        private void collectOffers(final ACLMessage proposal) {
+            final List<ShoppingList.Offer> offers;
+            try {
+                offers = ShoppingList.decodeOffers(proposal.getContent());
+            } catch (NumberFormatException e) {
+                LOG.warn("Malformed proposal from {}: {}", proposal.getSender().getName(), e.getMessage());
+                return;
+            }
+            for (int i = 0; i < Math.min(offers.size(), titles.size()); i++) {
+                final ShoppingList.Offer offer = offers.get(i);
+                if (offer != null && (bestSellers[i] == null || isBetter(offer, bestOffers[i], titles.get(i)))) {
+                    // This is the best offer for the title at present
+                    bestOffers[i] = offer;
+                    bestSellers[i] = proposal.getSender();
+                }
+            }
+        }
+
+        private boolean isBetter(final ShoppingList.Offer offer,
+                final ShoppingList.Offer best,
+                final String title) {
+            final boolean exact = offer.getTitle().equalsIgnoreCase(title);
+            final boolean bestExact = best.getTitle().equalsIgnoreCase(title);
+            return exact != bestExact ? exact : offer.getPrice() < best.getPrice();
+        }
+
+        /**
+         * Cross the books sold by the seller off the shopping list.
+         */
+        private void completePurchase(final ACLMessage inform) {
+            final Map<String, String> orderedTitles = orders.get(inform.getSender());
+            for (final String soldTitle : ShoppingList.decodeTitles(inform.getContent())) {
+                final String title = orderedTitles.get(soldTitle);
+                if (title != null && targetBookTitles.remove(title)) {
+                    // Purchase successful
+                    LOG.info("{} successfully purchased from agent {}\nPrice = {}",
+                            soldTitle,
+                            inform.getSender().getName(),
+                            bestOffers[titles.indexOf(title)].getPrice());
+                }
+            }
+        }
+
+        private boolean hasOffers() {
+            for (final AID bestSeller : bestSellers) {
+                if (bestSeller != null) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Block until a new message arrives or the deadline expires.
+         *
+         * @return {@code false} if the deadline has already expired
+         */
+        private boolean awaitUntilDeadline() {
+            final long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            block(remaining);
+            return true;
+        }
+
         @Override
         public boolean done() {
-            if (this.step == 2 && this.bestSeller == null) {
-                LOG.info("Attempt failed: {} not available for sale", targetBookTitle);
+            final boolean noOffers = step == 2 && !hasOffers();
+            if (noOffers) {
+                LOG.info("Attempt failed: {} not available for sale", titles);
+            }
+            return noOffers || step == 4;
+        }
+
+        @Override
+        public int onEnd() {
+            activeReplyWith = null;
+            requestInProgress = false;
+            return super.onEnd();
+        }
+    }
+
+    /**
+     * Inner class LateRepliesCleaner. Replies of this conversation that do not belong to the running negotiation
+     * arrived after its deadline; they are dropped so that they do not pile up in the mailbox.
+     */
+    private class LateRepliesCleaner extends CyclicBehaviour {
+
+        private final MessageTemplate messageTemplate = new MessageTemplate(
+                (MessageTemplate.MatchExpression) message -> BOOK_TRADE_CONVERSATION_ID
+                        .equals(message.getConversationId())
+                        && (activeReplyWith == null || !activeReplyWith.equals(message.getInReplyTo())));
+
+        @Override
+        public void action() {
+            ACLMessage lateReply;
+            while ((lateReply = myAgent.receive(messageTemplate)) != null) {
+                LOG.debug("Dropping late reply from {}", lateReply.getSender().getName());
             }
-            return ((step == 2 && bestSeller == null) || step == 4);
+            block();
         }
     }
 }
@@ -0,0 +1,123 @@
+package ru.autkaev.agents.booktrading.seller;
+
+import ru.autkaev.agents.booktrading.TitleSummary;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * The catalogue of books for sale, mapping the title of a book to its price. Titles are matched case-insensitively.
+ * <p>
+ * The titles are also kept in a {@link TitleIndex}, so that a request with a mistyped or incomplete title can be
+ * answered with the closest title for sale without scanning the catalogue.
+ *
+ * @author Anton Utkaev
+ * @since 2026.10.18
+ */
+public class BookCatalogue {
+
+    /**
+     * The shortest request completed by prefix.
+     */
+    private static final int MIN_PREFIX_LENGTH = 3;
+
+    /**
+     * A request is completed by prefix only if it makes up at least this many quarters of the completed title, so that
+     * a short request does not turn into an unrelated book.
+     */
+    private static final int MIN_PREFIX_QUARTERS = 3;
+
+    private final Map<String, Double> prices = new HashMap<>();
+
+    private final TitleIndex titleIndex = new TitleIndex();
+
+    /**
+     * Changes whenever a title is added or removed.
+     */
+    private long version;
+
+    public void put(final String title, final double price) {
+        final String key = key(title);
+        if (prices.put(key, price) == null) {
+            titleIndex.add(key);
+            version++;
+        }
+    }
+
+    public void putAll(final Map<String, Double> books) {
+        books.forEach(this::put);
+    }
+
+    /**
+     * @return the price of the book or {@code null} if it is not for sale
+     */
+    public Double priceOf(final String title) {
+        return prices.get(key(title));
+    }
+
+    /**
+     * Take the book off sale.
+     *
+     * @return the price of the sold book or {@code null} if it was not for sale
+     */
+    public Double remove(final String title) {
+        final String key = key(title);
+        final Double price = prices.remove(key);
+        if (price != null) {
+            titleIndex.remove(key);
+            version++;
+        }
+        return price;
+    }
+
+    /**
+     * Find the title for sale closest to the requested one: the same title, otherwise the title within a small edit
+     * distance, otherwise the shortest title starting with the requested one if the request makes up most of it.
+     *
+     * @return the matched title as stored in the catalogue (lower case) or {@code null} if nothing is close enough
+     */
+    public String closestTitle(final String title) {
+        final String key = key(title);
+        if (prices.containsKey(key)) {
+            return key;
+        }
+        final int maxDistance = TitleSummary.maxEditDistance(key);
+        final String nearest = maxDistance > 0 ? titleIndex.nearest(key, maxDistance) : null;
+        if (nearest != null) {
+            return nearest;
+        }
+        if (key.length() < MIN_PREFIX_LENGTH) {
+            return null;
+        }
+        final String completion = titleIndex.shortestWithPrefix(key);
+        return completion != null && key.length() * 4 >= completion.length() * MIN_PREFIX_QUARTERS ? completion : null;
+    }
+
+    public boolean isEmpty() {
+        return prices.isEmpty();
+    }
+
+    public int size() {
+        return prices.size();
+    }
+
+    /**
+     * @return the version of the set of titles: while it is unchanged, so is the {@link TitleSummary} of the catalogue
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public TitleSummary summary() {
+        return TitleSummary.of(prices.keySet());
+    }
+
+    public Stream<Map.Entry<String, Double>> stream() {
+        return prices.entrySet().stream();
+    }
+
+    private static String key(final String title) {
+        return title.toLowerCase();
+    }
+}
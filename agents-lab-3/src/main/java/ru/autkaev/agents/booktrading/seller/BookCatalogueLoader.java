@@ -0,0 +1,90 @@
+package ru.autkaev.agents.booktrading.seller;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bulk catalogue import from a memory-mapped CSV file with one {@code title;price} pair per line. Empty lines and lines
+ * starting with {@code #} are skipped.
+ *
+ * @author Anton Utkaev
+ * @since 2026.10.18
+ */
+public final class BookCatalogueLoader {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BookCatalogueLoader.class);
+
+    private BookCatalogueLoader() {
+    }
+
+    /**
+     * Read the whole catalogue file in one pass.
+     *
+     * @param path
+     *            catalogue file
+     * @return prices by title in file order, malformed lines are skipped
+     * @throws IOException
+     *             if the file can not be read
+     */
+    public static Map<String, Double> load(final Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Catalogue file is too large: " + path);
+            }
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            final Map<String, Double> books = new LinkedHashMap<>();
+            byte[] line = new byte[256];
+            int lineNumber = 0;
+            int skipped = 0;
+            String firstError = null;
+            while (buffer.hasRemaining()) {
+                int length = 0;
+                while (buffer.hasRemaining()) {
+                    final byte next = buffer.get();
+                    if (next == '\n') {
+                        break;
+                    }
+                    if (length == line.length) {
+                        line = Arrays.copyOf(line, length * 2);
+                    }
+                    line[length++] = next;
+                }
+                lineNumber++;
+                if (length > 0 && line[length - 1] == '\r') {
+                    length--;
+                }
+                if (length == 0 || line[0] == '#') {
+                    continue;
+                }
+                final String book = new String(line, 0, length, StandardCharsets.UTF_8);
+                final int separator = book.lastIndexOf(';');
+                try {
+                    if (separator <= 0) {
+                        throw new IllegalArgumentException("Expected title;price");
+                    }
+                    books.put(book.substring(0, separator).trim(),
+                            Double.parseDouble(book.substring(separator + 1).trim()));
+                } catch (IllegalArgumentException e) {
+                    if (firstError == null) {
+                        firstError = "line " + lineNumber + ": " + e.getMessage();
+                    }
+                    skipped++;
+                }
+            }
+            if (skipped > 0) {
+                LOG.warn("Skipped {} malformed lines in {}, first at {}", skipped, path, firstError);
+            }
+            return books;
+        }
+    }
+}
@@ -3,20 +3,31 @@ package ru.autkaev.agents.booktrading.seller;
 import static ru.autkaev.agents.booktrading.DescriptionTypes.BOOK_SELLING_DESC_TYPE;
 
 import jade.core.Agent;
-import jade.core.behaviours.CyclicBehaviour;
 import jade.core.behaviours.OneShotBehaviour;
 import jade.core.behaviours.TickerBehaviour;
 import jade.domain.DFService;
 import jade.domain.FIPAException;
 import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.domain.FIPAAgentManagement.Property;
 import jade.domain.FIPAAgentManagement.ServiceDescription;
 import jade.lang.acl.ACLMessage;
-import jade.lang.acl.MessageTemplate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import ru.autkaev.agents.booktrading.MessageDispatcher;
+import ru.autkaev.agents.booktrading.ShoppingList;
+import ru.autkaev.agents.booktrading.TitleSummary;
 
+import java.awt.GraphicsEnvironment;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -29,39 +40,57 @@ public class BookSellerAgent extends Agent {
 
     private static final Logger LOG = LoggerFactory.getLogger(BookSellerAgent.class);
 
+    /**
+     * Prefix of the start-up argument with the path of a catalogue file for bulk import.
+     */
+    public static final String CATALOGUE_FILE_ARGUMENT = "catalogue=";
+
+    /**
+     * How often the summary of the catalogue in the yellow pages is refreshed at most, in milliseconds.
+     */
+    private static final long SUMMARY_REFRESH_PERIOD = 2000;
+
     /**
      * The catalogue of books for sale (maps the title of a book to its price)
      */
-    private final Map<String, Double> catalogue = new HashMap<>();
+    private final BookCatalogue catalogue = new BookCatalogue();
 
     /**
      * The GUI by means of which the user can add books in the catalogue
      */
     private BookSellerGui myGui;
 
+    /**
+     * Without start-up arguments the GUI is shown. Otherwise the agent runs without a GUI and every argument is a book
+     * for sale in the form {@code title;price} or a catalogue file prefixed with {@link #CATALOGUE_FILE_ARGUMENT}.
+     */
     @Override
     protected void setup() {
 
-        // Create and show the GUI
-        myGui = new BookSellerGui(this);
-        myGui.showGui();
+        final Object[] args = getArguments();
+        if (args != null && args.length > 0) {
+            loadCatalogue(args);
+        } else if (GraphicsEnvironment.isHeadless()) {
+            LOG.warn("Seller {} started without a display and with an empty catalogue", getLocalName());
+        } else {
+            // Create and show the GUI
+            myGui = new BookSellerGui(this);
+            myGui.showGui();
+        }
 
-        // Register the book-selling service in the yellow pages
-        final DFAgentDescription dfAgentDescription = new DFAgentDescription();
-        dfAgentDescription.setName(this.getAID());
-        final ServiceDescription serviceDescription = new ServiceDescription();
-        serviceDescription.setType(BOOK_SELLING_DESC_TYPE);
-        serviceDescription.setName("JADE-book-trading");
-        dfAgentDescription.addServices(serviceDescription);
+        // Register the book-selling service in the yellow pages, the summary of the catalogue follows once it is loaded
         try {
-            DFService.register(this, dfAgentDescription);
+            DFService.register(this, describeService(null));
         } catch (FIPAException fe) {
             LOG.error(fe.getMessage());
             fe.printStackTrace();
         }
+        addBehaviour(new SummaryPublisher());
 
-        // Add the behaviour serving queries from buyer agents
-        addBehaviour(new BookSellerAgent.OfferRequestsServer());
+        // Add the behaviour serving queries and purchase orders from buyer agents, orders first
+        addBehaviour(new MessageDispatcher(this)
+                .register(ACLMessage.CFP, new OfferRequestsServer())
+                .register(ACLMessage.ACCEPT_PROPOSAL, MessageDispatcher.Priority.HIGH, new PurchaseOrdersServer()));
 
         // Add the behavior telling log its catalogue
         addBehaviour(new TickerBehaviour(this, 20000) {
@@ -70,8 +99,7 @@ public class BookSellerAgent extends Agent {
             protected void onTick() {
                 if (!catalogue.isEmpty()) {
                     LOG.info("Book to sold! {}",
-                            catalogue.entrySet()
-                                    .stream()
+                            catalogue.stream()
                                     .map(stringDoubleEntry -> String.format("Title: %s, Price: %s",
                                             stringDoubleEntry.getKey(),
                                             stringDoubleEntry.getValue()))
@@ -80,9 +108,6 @@ public class BookSellerAgent extends Agent {
             }
 
         });
-
-        // Add the behaviour serving purchase orders from buyer agents
-        addBehaviour(new BookSellerAgent.PurchaseOrdersServer());
     }
 
     @Override
@@ -95,11 +120,84 @@ public class BookSellerAgent extends Agent {
             fe.printStackTrace();
         }
         // Close the GUI
-        myGui.dispose();
+        if (myGui != null) {
+            myGui.dispose();
+        }
         // Printout a dismissal message
         LOG.info("Seller-agent {} terminating.", getAID().getName());
     }
 
+    /**
+     * The description of the book-selling service for the yellow pages.
+     *
+     * @param summary
+     *            the summary of the catalogue or {@code null} if buyers should ask the seller for any title
+     */
+    private DFAgentDescription describeService(final TitleSummary summary) {
+        final DFAgentDescription dfAgentDescription = new DFAgentDescription();
+        dfAgentDescription.setName(this.getAID());
+        final ServiceDescription serviceDescription = new ServiceDescription();
+        serviceDescription.setType(BOOK_SELLING_DESC_TYPE);
+        serviceDescription.setName("JADE-book-trading");
+        if (summary != null) {
+            serviceDescription.addProperties(new Property(TitleSummary.PROPERTY, summary.encode()));
+        }
+        dfAgentDescription.addServices(serviceDescription);
+        return dfAgentDescription;
+    }
+
+    /**
+     * Fill the catalogue from the start-up arguments.
+     */
+    private void loadCatalogue(final Object[] args) {
+        final Map<String, Double> books = new HashMap<>();
+        for (final Object arg : args) {
+            final String book = String.valueOf(arg);
+            if (book.startsWith(CATALOGUE_FILE_ARGUMENT)) {
+                importCatalogue(Paths.get(book.substring(CATALOGUE_FILE_ARGUMENT.length())));
+                continue;
+            }
+            final int separator = book.lastIndexOf(';');
+            try {
+                if (separator <= 0) {
+                    throw new IllegalArgumentException("Expected title;price");
+                }
+                books.put(book.substring(0, separator).trim(),
+                        Double.parseDouble(book.substring(separator + 1).trim()));
+            } catch (IllegalArgumentException e) {
+                LOG.error("Skipping catalogue argument {}: {}", book, e.getMessage());
+            }
+        }
+        if (!books.isEmpty()) {
+            updateCatalogue(books);
+        }
+    }
+
+    /**
+     * Import the whole catalogue file in one pass instead of adding books one by one.
+     */
+    public void importCatalogue(final Path path) {
+        try {
+            updateCatalogue(BookCatalogueLoader.load(path));
+        } catch (IOException e) {
+            LOG.error("Failed to import catalogue from {}: {}", path, e.getMessage());
+        }
+    }
+
+    /**
+     * Add a batch of books for sale with a single behaviour and a single log record.
+     */
+    public void updateCatalogue(final Map<String, Double> books) {
+        addBehaviour(new OneShotBehaviour() {
+
+            @Override
+            public void action() {
+                catalogue.putAll(books);
+                LOG.info("{} books inserted into catalogue", books.size());
+            }
+        });
+    }
+
     /**
      * This is invoked by the GUI when the user adds a new book for sale.
      */
@@ -108,74 +206,105 @@ public class BookSellerAgent extends Agent {
 
             @Override
             public void action() {
-                catalogue.put(title.toLowerCase(), price);
+                catalogue.put(title, price);
                 LOG.info("{} inserted into catalogue. Price = {}", title, price);
             }
         });
     }
 
     /**
-     * Inner class OfferRequestsServer. This is the behaviour used by Book-seller agents to serve incoming requests for
-     * offer from buyer agents. If the requested book is in the local catalogue the seller agent replies with a PROPOSE
-     * message specifying the price. Otherwise a REFUSE message is sent back.
+     * Inner class SummaryPublisher. Republishes the summary of the catalogue in the yellow pages when the set of titles
+     * has changed, at most once per {@link #SUMMARY_REFRESH_PERIOD}, so that a stream of sales and additions does not
+     * turn into a stream of DF updates. Buyers may skip a book added since the last refresh until the next one.
      */
-    private class OfferRequestsServer extends CyclicBehaviour {
+    private class SummaryPublisher extends TickerBehaviour {
+
+        private long publishedVersion = -1;
+
+        SummaryPublisher() {
+            super(BookSellerAgent.this, SUMMARY_REFRESH_PERIOD);
+        }
 
         @Override
-        public void action() {
-            final MessageTemplate messageTemplate = MessageTemplate.MatchPerformative(ACLMessage.CFP);
-            final ACLMessage aclMessage = myAgent.receive(messageTemplate);
-            if (aclMessage != null) {
-                // CFP Message received. Process it
-                final String title = aclMessage.getContent().toLowerCase();
-                final ACLMessage reply = aclMessage.createReply();
-
-                final Double price = catalogue.get(title);
-                if (price != null) {
-                    // The requested book is available for sale. Reply with the price
-                    reply.setPerformative(ACLMessage.PROPOSE);
-                    reply.setContent(String.valueOf(price.doubleValue()));
-                } else {
-                    // The requested book is NOT available for sale.
-                    reply.setPerformative(ACLMessage.REFUSE);
-                    reply.setContent("not-available");
-                }
-                myAgent.send(reply);
+        protected void onTick() {
+            final long version = catalogue.getVersion();
+            if (version == publishedVersion) {
+                return;
+            }
+            try {
+                DFService.modify(myAgent, describeService(catalogue.summary()));
+                publishedVersion = version;
+            } catch (FIPAException fe) {
+                LOG.error("Failed to publish the catalogue summary: {}", fe.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Inner class OfferRequestsServer. This is the handler used by Book-seller agents to serve incoming requests for
+     * offer from buyer agents. A request carries a shopping list (see {@link ShoppingList}); for every title for which
+     * the requested book or a book with a close title is in the local catalogue the seller agent proposes the price and
+     * the offered title, all in one PROPOSE message. If nothing is available a REFUSE message is sent back.
+     */
+    private class OfferRequestsServer implements Consumer<ACLMessage> {
+
+        @Override
+        public void accept(final ACLMessage aclMessage) {
+            // CFP Message received. Process it
+            final List<String> titles = ShoppingList.decodeTitles(aclMessage.getContent());
+            final ACLMessage reply = aclMessage.createReply();
+
+            final List<ShoppingList.Offer> offers = new ArrayList<>(titles.size());
+            // every book is a single copy, so it is offered for one title of the list only
+            final Set<String> offeredTitles = new HashSet<>();
+            for (final String title : titles) {
+                final String offeredTitle = catalogue.closestTitle(title);
+                offers.add(offeredTitle != null && offeredTitles.add(offeredTitle)
+                        ? new ShoppingList.Offer(offeredTitle, catalogue.priceOf(offeredTitle))
+                        : null);
+            }
+            if (!offeredTitles.isEmpty()) {
+                // Some of the requested books or close ones are available for sale. Reply with the prices and titles
+                reply.setPerformative(ACLMessage.PROPOSE);
+                reply.setContent(ShoppingList.encodeOffers(offers));
             } else {
-                block();
+                // None of the requested books is available for sale.
+                reply.setPerformative(ACLMessage.REFUSE);
+                reply.setContent("not-available");
             }
+            send(reply);
         }
     }
 
     /**
-     * Inner class PurchaseOrdersServer. This is the behaviour used by Book-seller agents to serve incoming offer
-     * acceptances (i.e. purchase orders) from buyer agents. The seller agent removes the purchased book from its
-     * catalogue and replies with an INFORM message to notify the buyer that the purchase has been sucesfully completed.
+     * Inner class PurchaseOrdersServer. This is the handler used by Book-seller agents to serve incoming offer
+     * acceptances (i.e. purchase orders) from buyer agents. An order lists the titles bought from this seller; the
+     * seller agent removes the purchased books from its catalogue and replies with an INFORM message listing the books
+     * sold. If all of them have been sold to other buyers in the meanwhile a FAILURE message is sent back.
      */
-    private class PurchaseOrdersServer extends CyclicBehaviour {
+    private class PurchaseOrdersServer implements Consumer<ACLMessage> {
 
         @Override
-        public void action() {
-            final MessageTemplate messageTemplate = MessageTemplate.MatchPerformative(ACLMessage.ACCEPT_PROPOSAL);
-            final ACLMessage aclMessage = myAgent.receive(messageTemplate);
-            if (aclMessage != null) {
-                // ACCEPT_PROPOSAL Message received. Process it
-                final String title = aclMessage.getContent();
-                final ACLMessage reply = aclMessage.createReply();
-
-                final Double price = catalogue.remove(title);
-                if (price != null) {
-                    reply.setPerformative(ACLMessage.INFORM);
+        public void accept(final ACLMessage aclMessage) {
+            // ACCEPT_PROPOSAL Message received. Process it
+            final ACLMessage reply = aclMessage.createReply();
+
+            final List<String> soldTitles = new ArrayList<>();
+            for (final String title : ShoppingList.decodeTitles(aclMessage.getContent())) {
+                if (catalogue.remove(title) != null) {
+                    soldTitles.add(title);
                     LOG.info("{} sold to agent {}", title, aclMessage.getSender().getName());
-                } else {
-                    // The requested book has been sold to another buyer in the meanwhile .
-                    reply.setPerformative(ACLMessage.FAILURE);
-                    reply.setContent("not-available");
                 }
-                myAgent.send(reply);
+            }
+            if (!soldTitles.isEmpty()) {
+                reply.setPerformative(ACLMessage.INFORM);
+                reply.setContent(ShoppingList.encodeTitles(soldTitles));
             } else {
-                block();
+                // The requested books have been sold to another buyer in the meanwhile .
+                reply.setPerformative(ACLMessage.FAILURE);
+                reply.setContent("not-available");
             }
+            send(reply);
         }
     }
 }
@@ -0,0 +1,215 @@
+package ru.autkaev.agents.booktrading.seller;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+
+/**
+ * A trie of catalogue titles for lookups by prefix and by bounded edit distance.
+ * <p>
+ * The edit-distance search walks the trie once, carrying a row of the Levenshtein matrix per node, and abandons a
+ * branch as soon as every value in its row exceeds the bound, so only the titles sharing a close prefix with the
+ * query are visited.
+ * <p>
+ * A node keeps its letters in a sorted array next to an array of children of the same length, so a long title costs a
+ * few dozen bytes per character rather than a map with boxed keys and entries.
+ *
+ * @author Anton Utkaev
+ * @since 2026.10.18
+ */
+final class TitleIndex {
+
+    private final Node root = new Node();
+
+    void add(final String title) {
+        Node node = root;
+        for (int i = 0; i < title.length(); i++) {
+            node = node.childOrAdd(title.charAt(i));
+        }
+        node.title = title;
+    }
+
+    void remove(final String title) {
+        remove(root, title, 0);
+    }
+
+    /**
+     * @return {@code true} if the node became empty and was unlinked by the caller
+     */
+    private static boolean remove(final Node node, final String title, final int depth) {
+        if (depth == title.length()) {
+            node.title = null;
+        } else {
+            final Node child = node.child(title.charAt(depth));
+            if (child != null && remove(child, title, depth + 1)) {
+                node.removeChild(title.charAt(depth));
+            }
+        }
+        return node.title == null && node.letters.length == 0;
+    }
+
+    /**
+     * @return the shortest title starting with {@code prefix}, the alphabetically first among equally short ones, or
+     *         {@code null} if there is none
+     */
+    String shortestWithPrefix(final String prefix) {
+        Node node = root;
+        for (int i = 0; i < prefix.length() && node != null; i++) {
+            node = node.child(prefix.charAt(i));
+        }
+        if (node == null) {
+            return null;
+        }
+        // breadth-first, so the first title found is one of the shortest
+        final Queue<Node> queue = new ArrayDeque<>();
+        queue.add(node);
+        while (!queue.isEmpty()) {
+            final Node next = queue.poll();
+            if (next.title != null) {
+                return next.title;
+            }
+            queue.addAll(Arrays.asList(next.children));
+        }
+        return null;
+    }
+
+    /**
+     * @param maxDistance
+     *            the largest number of inserted, deleted or replaced characters
+     * @return the title with the smallest edit distance to {@code query} not exceeding {@code maxDistance}, the
+     *         alphabetically first among equally distant ones, or {@code null} if there is none
+     */
+    String nearest(final String query, final int maxDistance) {
+        final int[] firstRow = new int[query.length() + 1];
+        for (int i = 0; i < firstRow.length; i++) {
+            firstRow[i] = i;
+        }
+        final Match match = new Match(maxDistance);
+        if (root.title != null && firstRow[query.length()] <= maxDistance) {
+            match.offer(root.title, firstRow[query.length()]);
+        }
+        for (int i = 0; i < root.letters.length; i++) {
+            search(root.children[i], root.letters[i], query, firstRow, match);
+        }
+        return match.title;
+    }
+
+    private static void search(final Node node,
+            final char letter,
+            final String query,
+            final int[] previousRow,
+            final Match match) {
+        final int[] row = new int[previousRow.length];
+        row[0] = previousRow[0] + 1;
+        int rowMin = row[0];
+        for (int i = 1; i < row.length; i++) {
+            final int replace = previousRow[i - 1] + (query.charAt(i - 1) == letter ? 0 : 1);
+            row[i] = Math.min(Math.min(row[i - 1] + 1, previousRow[i] + 1), replace);
+            rowMin = Math.min(rowMin, row[i]);
+        }
+        if (node.title != null) {
+            match.offer(node.title, row[query.length()]);
+        }
+        // titles below this node are at least rowMin edits away
+        if (rowMin <= match.bound) {
+            for (int i = 0; i < node.letters.length; i++) {
+                search(node.children[i], node.letters[i], query, row, match);
+            }
+        }
+    }
+
+    private static final class Node {
+
+        private static final char[] NO_LETTERS = new char[0];
+
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        /**
+         * The letters of the children in ascending order.
+         */
+        private char[] letters = NO_LETTERS;
+
+        /**
+         * The child for the letter at the same position.
+         */
+        private Node[] children = NO_CHILDREN;
+
+        /**
+         * The title ending at this node or {@code null}.
+         */
+        private String title;
+
+        Node child(final char letter) {
+            final int position = Arrays.binarySearch(letters, letter);
+            return position >= 0 ? children[position] : null;
+        }
+
+        Node childOrAdd(final char letter) {
+            final int position = Arrays.binarySearch(letters, letter);
+            if (position >= 0) {
+                return children[position];
+            }
+            // most nodes have a single child, so the arrays grow by one instead of keeping spare capacity
+            final int insertion = -position - 1;
+            final char[] newLetters = new char[letters.length + 1];
+            final Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(letters, 0, newLetters, 0, insertion);
+            System.arraycopy(children, 0, newChildren, 0, insertion);
+            System.arraycopy(letters, insertion, newLetters, insertion + 1, letters.length - insertion);
+            System.arraycopy(children, insertion, newChildren, insertion + 1, children.length - insertion);
+            final Node child = new Node();
+            newLetters[insertion] = letter;
+            newChildren[insertion] = child;
+            letters = newLetters;
+            children = newChildren;
+            return child;
+        }
+
+        void removeChild(final char letter) {
+            final int position = Arrays.binarySearch(letters, letter);
+            if (position < 0) {
+                return;
+            }
+            if (letters.length == 1) {
+                letters = NO_LETTERS;
+                children = NO_CHILDREN;
+                return;
+            }
+            final char[] newLetters = new char[letters.length - 1];
+            final Node[] newChildren = new Node[children.length - 1];
+            System.arraycopy(letters, 0, newLetters, 0, position);
+            System.arraycopy(children, 0, newChildren, 0, position);
+            System.arraycopy(letters, position + 1, newLetters, position, newLetters.length - position);
+            System.arraycopy(children, position + 1, newChildren, position, newChildren.length - position);
+            letters = newLetters;
+            children = newChildren;
+        }
+    }
+
+    /**
+     * The best title found so far. The bound shrinks to the best distance, so farther branches are not explored.
+     */
+    private static final class Match {
+
+        private int bound;
+
+        private String title;
+
+        private int distance = Integer.MAX_VALUE;
+
+        Match(final int bound) {
+            this.bound = bound;
+        }
+
+        void offer(final String candidate, final int candidateDistance) {
+            if (candidateDistance > bound) {
+                return;
+            }
+            if (candidateDistance < distance || candidateDistance == distance && candidate.compareTo(title) < 0) {
+                title = candidate;
+                distance = candidateDistance;
+                bound = candidateDistance;
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package ru.autkaev.agents.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.autkaev.agents.booktrading.seller.BookCatalogue;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Title lookups the book seller performs for every CFP. Requested titles differ from the catalogue in letter case, as
+ * typed by buyers. The closest title is looked up for an exact title, a title with one mistyped letter and a title far
+ * from every one in the catalogue.
+ *
+ * @author Anton Utkaev
+ * @since 2026.10.18
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BookCatalogueBenchmark {
+
+    /**
+     * Number of prepared titles, a power of two.
+     */
+    private static final int TITLE_COUNT = 1024;
+
+    @Param({ "1000", "100000", "1000000" })
+    private int catalogueSize;
+
+    private BookCatalogue catalogue;
+
+    private String[] presentTitles;
+
+    private String[] missingTitles;
+
+    private String[] mistypedTitles;
+
+    private String[] unrelatedTitles;
+
+    private int nextTitle;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(42);
+        catalogue = new BookCatalogue();
+        for (int i = 0; i < catalogueSize; i++) {
+            catalogue.put("The Art of Agent Programming, volume " + i, 10.0 + random.nextInt(90));
+        }
+        presentTitles = new String[TITLE_COUNT];
+        missingTitles = new String[TITLE_COUNT];
+        mistypedTitles = new String[TITLE_COUNT];
+        unrelatedTitles = new String[TITLE_COUNT];
+        for (int i = 0; i < TITLE_COUNT; i++) {
+            presentTitles[i] = "the art of agent programming, VOLUME " + random.nextInt(catalogueSize);
+            missingTitles[i] = "The Art of Agent Programming, volume " + (catalogueSize + i);
+            mistypedTitles[i] = "The Art of Agent Progamming, volume " + random.nextInt(catalogueSize);
+            unrelatedTitles[i] = "A Field Guide to Mushrooms, part " + i;
+        }
+    }
+
+    @Benchmark
+    public Double priceOfPresent() {
+        return catalogue.priceOf(presentTitles[nextTitle++ & (TITLE_COUNT - 1)]);
+    }
+
+    @Benchmark
+    public Double priceOfMissing() {
+        return catalogue.priceOf(missingTitles[nextTitle++ & (TITLE_COUNT - 1)]);
+    }
+
+    @Benchmark
+    public String closestTitleOfPresent() {
+        return catalogue.closestTitle(presentTitles[nextTitle++ & (TITLE_COUNT - 1)]);
+    }
+
+    @Benchmark
+    public String closestTitleOfMistyped() {
+        return catalogue.closestTitle(mistypedTitles[nextTitle++ & (TITLE_COUNT - 1)]);
+    }
+
+    @Benchmark
+    public String closestTitleOfUnrelated() {
+        return catalogue.closestTitle(unrelatedTitles[nextTitle++ & (TITLE_COUNT - 1)]);
+    }
+}
@@ -0,0 +1,72 @@
+package ru.autkaev.agents.benchmarks;
+
+import ru.autkaev.agents.techretail.catalogue.SmartphoneCatalogue;
+import ru.autkaev.agents.techretail.smartphone.Smartphone;
+import ru.autkaev.agents.techretail.smartphone.SmartphoneOs;
+
+import java.util.Random;
+
+/**
+ * Reproducible synthetic smartphones and customer criteria. The same seed always yields the same data, so runs before
+ * and after an engine change see identical workloads.
+ *
+ * @author Anton Utkaev
+ * @since 2026.10.18
+ */
+public final class CatalogueGenerator {
+
+    private static final String[] BRANDS =
+            { "Pixel", "Galaxy", "iPhone", "Xperia", "Nokia", "Moto", "Redmi", "OnePlus", "Honor", "Zenfone" };
+
+    private static final int[] RAM_SIZES = { 1024, 2048, 3072, 4096, 6144, 8192, 12288, 16384 };
+
+    private static final SmartphoneOs[] OS_VALUES = SmartphoneOs.values();
+
+    private CatalogueGenerator() {
+    }
+
+    public static Smartphone smartphone(final Random random) {
+        return new Smartphone().setName(BRANDS[random.nextInt(BRANDS.length)] + " " + random.nextInt(1000))
+                .setInstalledRam(RAM_SIZES[random.nextInt(RAM_SIZES.length)])
+                .setCpuSpeed(1.0 + random.nextInt(26) / 10.0)
+                .setSmartphoneOs(OS_VALUES[random.nextInt(OS_VALUES.length)])
+                .setPrice(100.0 + random.nextInt(1900));
+    }
+
+    /**
+     * Customer criteria where every attribute is set with probability one half, like the forms filled in by hand.
+     */
+    public static Smartphone criteria(final Random random) {
+        final Smartphone criteria = new Smartphone();
+        if (random.nextBoolean()) {
+            criteria.setName(BRANDS[random.nextInt(BRANDS.length)].toLowerCase());
+        }
+        if (random.nextBoolean()) {
+            criteria.setInstalledRam(RAM_SIZES[random.nextInt(RAM_SIZES.length)]);
+        }
+        if (random.nextBoolean()) {
+            criteria.setCpuSpeed(1.0 + random.nextInt(26) / 10.0);
+        }
+        if (random.nextBoolean()) {
+            criteria.setSmartphoneOs(OS_VALUES[random.nextInt(OS_VALUES.length)]);
+        }
+        if (random.nextBoolean()) {
+            criteria.setPrice(100.0 + random.nextInt(1900));
+        }
+        return criteria;
+    }
+
+    /**
+     * @param size
+     *            number of generated models, identical models are merged so the catalogue may be slightly smaller
+     * @param stockPerModel
+     *            units in stock for every model
+     */
+    public static SmartphoneCatalogue catalogue(final Random random, final int size, final int stockPerModel) {
+        final SmartphoneCatalogue catalogue = new SmartphoneCatalogue();
+        for (int i = 0; i < size; i++) {
+            catalogue.add(smartphone(random), stockPerModel);
+        }
+        return catalogue;
+    }
+}
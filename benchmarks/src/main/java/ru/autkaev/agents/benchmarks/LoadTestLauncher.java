@@ -0,0 +1,221 @@
+package ru.autkaev.agents.benchmarks;
+
+import jade.core.Profile;
+import jade.core.ProfileImpl;
+import jade.core.Runtime;
+import jade.wrapper.ContainerController;
+import jade.wrapper.StaleProxyException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.autkaev.agents.techretail.catalogue.SmartphoneCatalogue;
+import ru.autkaev.agents.techretail.customer.CustomerAgent;
+import ru.autkaev.agents.techretail.customer.CustomerEventSink;
+import ru.autkaev.agents.techretail.retailer.TechRetailerAgent;
+import ru.autkaev.agents.techretail.smartphone.Smartphone;
+import ru.autkaev.agents.techretail.smartphone.SmartphoneSortKey;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load test of the smartphone market inside one local JADE main container: N headless {@link TechRetailerAgent}s with
+ * generated catalogues and M headless {@link CustomerAgent}s with random criteria. Reports the purchase throughput and
+ * the end-to-end purchase latency, measured from the start of a customer to its completed purchase.
+ * <p>
+ * Settings are passed as {@code key=value} arguments, see {@link Settings}. Example:
+ * {@code java -cp benchmarks/target/benchmarks.jar ru.autkaev.agents.benchmarks.LoadTestLauncher customers=5000}
+ *
+ * @author Anton Utkaev
+ * @since 2026.10.18
+ */
+public final class LoadTestLauncher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LoadTestLauncher.class);
+
+    /**
+     * Time given to the retailers to register in the DF before customers start looking for them.
+     */
+    private static final long RETAILER_STARTUP_MILLIS = 2000;
+
+    private LoadTestLauncher() {
+    }
+
+    public static void main(final String[] args) throws StaleProxyException, InterruptedException {
+        final Settings settings = Settings.parse(args);
+        LOG.info("Starting load test: {}", settings);
+
+        final Random random = new Random(settings.seed);
+        final List<SmartphoneCatalogue> catalogues = new ArrayList<>(settings.retailers);
+        for (int i = 0; i < settings.retailers; i++) {
+            catalogues.add(CatalogueGenerator.catalogue(random, settings.catalogueSize, settings.stock));
+        }
+        // criteria no retailer can satisfy would only stretch the run until the timeout
+        final List<Smartphone> criteria = new ArrayList<>(settings.customers);
+        while (criteria.size() < settings.customers) {
+            final Smartphone candidate = CatalogueGenerator.criteria(random);
+            if (catalogues.stream()
+                    .anyMatch(catalogue -> !catalogue.findMatches(candidate, SmartphoneSortKey.PRICE, 1).isEmpty())) {
+                criteria.add(candidate);
+            }
+        }
+
+        final Profile profile = new ProfileImpl();
+        profile.setParameter(Profile.GUI, "false");
+        profile.setParameter(Profile.LOCAL_HOST, "localhost");
+        profile.setParameter(Profile.LOCAL_PORT, String.valueOf(settings.port));
+        final ContainerController container = Runtime.instance().createMainContainer(profile);
+
+        for (int i = 0; i < settings.retailers; i++) {
+            container.createNewAgent("retailer-" + i, TechRetailerAgent.class.getName(),
+                    new Object[] { catalogues.get(i) }).start();
+        }
+        Thread.sleep(RETAILER_STARTUP_MILLIS);
+
+        final Queue<Long> latencies = new ConcurrentLinkedQueue<>();
+        final CountDownLatch purchases = new CountDownLatch(settings.customers);
+        final long spawnIntervalNanos = settings.spawnRate > 0 ? TimeUnit.SECONDS.toNanos(1) / settings.spawnRate : 0;
+        final long loadStart = System.nanoTime();
+        for (int i = 0; i < settings.customers; i++) {
+            final long customerStart = System.nanoTime();
+            final CustomerEventSink eventSink = (smartphone, seller) -> {
+                latencies.add(System.nanoTime() - customerStart);
+                purchases.countDown();
+            };
+            container.createNewAgent("customer-" + i, CustomerAgent.class.getName(),
+                    new Object[] { criteria.get(i), eventSink }).start();
+            if (spawnIntervalNanos > 0) {
+                TimeUnit.NANOSECONDS.sleep(loadStart + (i + 1) * spawnIntervalNanos - System.nanoTime());
+            }
+        }
+        final long spawned = System.nanoTime();
+
+        final boolean finished = purchases.await(settings.timeoutSeconds, TimeUnit.SECONDS);
+        final long elapsed = System.nanoTime() - loadStart;
+        report(settings, latencies, finished, spawned - loadStart, elapsed);
+
+        container.kill();
+        Runtime.instance().shutDown();
+        System.exit(0);
+    }
+
+    private static void report(final Settings settings,
+            final Queue<Long> latencies,
+            final boolean finished,
+            final long spawnNanos,
+            final long elapsedNanos) {
+        final long[] sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+        final double elapsedSeconds = elapsedNanos / 1e9;
+        LOG.info("{} retailers, {} customers spawned in {} ms, {} purchases in {} s{}",
+                settings.retailers,
+                settings.customers,
+                TimeUnit.NANOSECONDS.toMillis(spawnNanos),
+                sorted.length,
+                String.format("%.2f", elapsedSeconds),
+                finished ? "" : ", timed out with " + (settings.customers - sorted.length) + " customers still buying");
+        if (sorted.length == 0) {
+            return;
+        }
+        LOG.info("Throughput: {} purchases/s", String.format("%.1f", sorted.length / elapsedSeconds));
+        LOG.info("Purchase latency, ms: p50 = {}, p90 = {}, p99 = {}, max = {}",
+                millis(percentile(sorted, 0.50)),
+                millis(percentile(sorted, 0.90)),
+                millis(percentile(sorted, 0.99)),
+                millis(sorted[sorted.length - 1]));
+    }
+
+    private static long percentile(final long[] sorted, final double fraction) {
+        return sorted[Math.max((int) Math.ceil(fraction * sorted.length) - 1, 0)];
+    }
+
+    private static String millis(final long nanos) {
+        return String.format("%.1f", nanos / 1e6);
+    }
+
+    /**
+     * Load test settings.
+     */
+    private static final class Settings {
+
+        /**
+         * Number of retailers.
+         */
+        private int retailers;
+
+        /**
+         * Number of customers, every customer buys one smartphone and terminates.
+         */
+        private int customers;
+
+        /**
+         * Number of models in the catalogue of every retailer.
+         */
+        private int catalogueSize;
+
+        /**
+         * Units of every model in stock.
+         */
+        private int stock;
+
+        /**
+         * Customers started per second, {@code 0} starts all customers at once.
+         */
+        private int spawnRate;
+
+        private long timeoutSeconds;
+
+        private long seed;
+
+        private int port;
+
+        static Settings parse(final String[] args) {
+            final Map<String, String> values = new HashMap<>();
+            for (final String arg : args) {
+                final int separator = arg.indexOf('=');
+                if (separator <= 0) {
+                    throw new IllegalArgumentException("Expected key=value but got: " + arg);
+                }
+                values.put(arg.substring(0, separator), arg.substring(separator + 1));
+            }
+            final Settings settings = new Settings();
+            try {
+                settings.retailers = Integer.parseInt(values.getOrDefault("retailers", "4"));
+                settings.customers = Integer.parseInt(values.getOrDefault("customers", "1000"));
+                settings.catalogueSize = Integer.parseInt(values.getOrDefault("catalogue-size", "10000"));
+                settings.stock = Integer.parseInt(values.getOrDefault("stock", "100"));
+                settings.spawnRate = Integer.parseInt(values.getOrDefault("spawn-rate", "0"));
+                settings.timeoutSeconds = Long.parseLong(values.getOrDefault("timeout", "300"));
+                settings.seed = Long.parseLong(values.getOrDefault("seed", "42"));
+                settings.port = Integer.parseInt(values.getOrDefault("port", "1199"));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid load test settings " + Arrays.toString(args), e);
+            }
+            if (settings.retailers <= 0 || settings.customers <= 0 || settings.catalogueSize <= 0) {
+                throw new IllegalArgumentException("Retailers, customers and catalogue size must be positive");
+            }
+            return settings;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "[retailers: %s], [customers: %s], [catalogue-size: %s], [stock: %s], [spawn-rate: %s], "
+                            + "[timeout: %s], [seed: %s], [port: %s]",
+                    retailers,
+                    customers,
+                    catalogueSize,
+                    stock,
+                    spawnRate,
+                    timeoutSeconds,
+                    seed,
+                    port);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package ru.autkaev.agents.benchmarks;
+
+import jade.core.AID;
+import jade.core.Profile;
+import jade.core.ProfileImpl;
+import jade.core.Runtime;
+import jade.wrapper.AgentController;
+import jade.wrapper.ContainerController;
+import jade.wrapper.StaleProxyException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.autkaev.agents.techretail.catalogue.SmartphoneCatalogue;
+import ru.autkaev.agents.techretail.retailer.TechRetailerAgent;
+import ru.autkaev.agents.techretail.smartphone.Smartphone;
+import ru.autkaev.agents.techretail.smartphone.SmartphoneSortKey;
+
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Stream;
+
+/**
+ * A full CFP - PROPOSE - ACCEPT_PROPOSAL - INFORM cycle between a {@link NegotiationDriverAgent} and a
+ * {@link TechRetailerAgent} inside one local JADE main container.
+ * <p>
+ * The driver takes the prepared criteria in turn. With an offer cache of one entry every CFP is a cache miss, so the
+ * retailer matches and encodes each time; with a cache holding all the criteria every CFP after the first round is a
+ * cache hit.
+ *
+ * @author Anton Utkaev
+ * @since 2026.10.18
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class NegotiationCycleBenchmark {
+
+    /**
+     * Port of the benchmark platform, apart from the default one so that a running platform does not interfere.
+     */
+    private static final String PLATFORM_PORT = "1199";
+
+    /**
+     * Units of every model in stock, enough for the retailer never to sell out during a run.
+     */
+    private static final int STOCK_PER_MODEL = 1_000_000_000;
+
+    /**
+     * Number of prepared criteria.
+     */
+    private static final int CRITERIA_COUNT = 1024;
+
+    @Param({ "1000", "100000" })
+    private int catalogueSize;
+
+    @Param({ "1", "1024" })
+    private int offerCacheSize;
+
+    private ContainerController container;
+
+    private AgentController driver;
+
+    @Setup
+    public void setUp() throws StaleProxyException {
+        final Profile profile = new ProfileImpl();
+        profile.setParameter(Profile.GUI, "false");
+        profile.setParameter(Profile.LOCAL_HOST, "localhost");
+        profile.setParameter(Profile.LOCAL_PORT, PLATFORM_PORT);
+        container = Runtime.instance().createMainContainer(profile);
+
+        final Random random = new Random(42);
+        final SmartphoneCatalogue catalogue = CatalogueGenerator.catalogue(random, catalogueSize, STOCK_PER_MODEL);
+        // only criteria with a match, so that every cycle ends with a purchase
+        final Smartphone[] criteria = Stream.generate(() -> CatalogueGenerator.criteria(random))
+                .filter(query -> !catalogue.findMatches(query, SmartphoneSortKey.PRICE, 1).isEmpty())
+                .limit(CRITERIA_COUNT)
+                .toArray(Smartphone[]::new);
+        final Object[] arguments = { catalogue, TechRetailerAgent.OFFER_CACHE_SIZE_ARGUMENT + offerCacheSize };
+        container.createNewAgent("retailer", TechRetailerAgent.class.getName(), arguments).start();
+
+        driver = container.acceptNewAgent("driver",
+                new NegotiationDriverAgent(new AID("retailer", AID.ISLOCALNAME), criteria));
+        driver.start();
+    }
+
+    @TearDown
+    public void tearDown() throws StaleProxyException {
+        container.kill();
+    }
+
+    @Benchmark
+    public Smartphone purchaseCycle()
+            throws StaleProxyException, InterruptedException, ExecutionException, TimeoutException {
+        final CompletableFuture<Smartphone> purchase = new CompletableFuture<>();
+        driver.putO2AObject(purchase, AgentController.ASYNC);
+        return purchase.get(30, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,117 @@
+package ru.autkaev.agents.benchmarks;
+
+import static ru.autkaev.agents.techretail.ServiceDescriptionType.RESULT_LIMIT_PARAMETER;
+import static ru.autkaev.agents.techretail.ServiceDescriptionType.SKU_PARAMETER;
+import static ru.autkaev.agents.techretail.ServiceDescriptionType.SMARTPHONE_SELL_CONVERSATION_ID;
+import static ru.autkaev.agents.techretail.ServiceDescriptionType.SORT_KEY_PARAMETER;
+
+import jade.core.AID;
+import jade.core.Agent;
+import jade.core.behaviours.CyclicBehaviour;
+import jade.lang.acl.ACLMessage;
+import jade.lang.acl.MessageTemplate;
+import ru.autkaev.agents.techretail.smartphone.Smartphone;
+import ru.autkaev.agents.techretail.smartphone.SmartphoneCodec;
+import ru.autkaev.agents.techretail.smartphone.SmartphoneSortKey;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Customer side of the negotiation benchmark. Every {@link CompletableFuture} put through the O2A channel runs one
+ * CFP - PROPOSE - ACCEPT_PROPOSAL - INFORM cycle with a single known retailer and is completed with the purchased
+ * smartphone. The cycles take the prepared criteria in turn.
+ * <p>
+ * Unlike {@code CustomerAgent} the driver neither waits for the DF nor for the purchase ticker, so the measured time
+ * is the messaging and the retailer's work only.
+ *
+ * @author Anton Utkaev
+ * @since 2026.10.18
+ */
+public class NegotiationDriverAgent extends Agent {
+
+    private static final long REPLY_TIMEOUT = 10000;
+
+    private final AID retailer;
+
+    private final Smartphone[] criteria;
+
+    private int nextCriteria;
+
+    private long negotiation;
+
+    /**
+     * @param criteria
+     *            criteria the retailer has a match for
+     */
+    public NegotiationDriverAgent(final AID retailer, final Smartphone[] criteria) {
+        this.retailer = retailer;
+        this.criteria = criteria;
+    }
+
+    @Override
+    protected void setup() {
+        setEnabledO2ACommunication(true, 0);
+        addBehaviour(new CyclicBehaviour(this) {
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public void action() {
+                final Object request = myAgent.getO2AObject();
+                if (request == null) {
+                    block();
+                    return;
+                }
+                final CompletableFuture<Smartphone> purchase = (CompletableFuture<Smartphone>) request;
+                try {
+                    purchase.complete(negotiate());
+                } catch (RuntimeException e) {
+                    purchase.completeExceptionally(e);
+                }
+            }
+        });
+    }
+
+    private Smartphone negotiate() {
+        final ACLMessage cfp = new ACLMessage(ACLMessage.CFP);
+        cfp.addReceiver(retailer);
+        cfp.setByteSequenceContent(SmartphoneCodec.encode(criteria[nextCriteria++ % criteria.length]));
+        cfp.addUserDefinedParameter(SORT_KEY_PARAMETER, SmartphoneSortKey.PRICE.name());
+        cfp.addUserDefinedParameter(RESULT_LIMIT_PARAMETER, "1");
+        final ACLMessage proposal = request(cfp, ACLMessage.PROPOSE);
+        final List<Smartphone> smartphones = SmartphoneCodec.decodeList(proposal.getByteSequenceContent());
+        final Smartphone smartphone = smartphones.get(0);
+
+        final ACLMessage order = proposal.createReply();
+        order.setPerformative(ACLMessage.ACCEPT_PROPOSAL);
+        order.setContent(smartphone.getName());
+        order.addUserDefinedParameter(SKU_PARAMETER, smartphone.getSku());
+        request(order, ACLMessage.INFORM);
+        return smartphone;
+    }
+
+    /**
+     * Send the message and wait for the reply on the agent thread.
+     *
+     * @param expectedPerformative
+     *            performative of a successful reply
+     * @return the reply
+     * @throws IllegalStateException
+     *             if no reply came in time or the retailer refused
+     */
+    private ACLMessage request(final ACLMessage message, final int expectedPerformative) {
+        final String replyWith = getLocalName() + "-" + negotiation++;
+        message.setConversationId(SMARTPHONE_SELL_CONVERSATION_ID);
+        message.setReplyWith(replyWith);
+        send(message);
+        final ACLMessage reply = blockingReceive(MessageTemplate.MatchInReplyTo(replyWith), REPLY_TIMEOUT);
+        if (reply == null) {
+            throw new IllegalStateException("No reply from " + retailer.getName());
+        }
+        if (reply.getPerformative() != expectedPerformative) {
+            throw new IllegalStateException("Unexpected reply " + ACLMessage.getPerformative(reply.getPerformative())
+                    + " from " + retailer.getName() + ": " + reply.getContent());
+        }
+        return reply;
+    }
+}
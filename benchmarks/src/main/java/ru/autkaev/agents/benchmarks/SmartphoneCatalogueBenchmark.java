@@ -0,0 +1,104 @@
+package ru.autkaev.agents.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.autkaev.agents.techretail.catalogue.SmartphoneCatalogue;
+import ru.autkaev.agents.techretail.smartphone.Smartphone;
+import ru.autkaev.agents.techretail.smartphone.SmartphoneSortKey;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Matching of customer criteria against the retailer catalogue, the work behind
+ * {@code TechRetailerAgent.OfferRequestsServer#getMatchesSmartphones}.
+ * <p>
+ * {@link #linearScan()} is the full scan the retailer used before the catalogue was indexed and serves as the
+ * baseline.
+ *
+ * @author Anton Utkaev
+ * @since 2026.10.18
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SmartphoneCatalogueBenchmark {
+
+    /**
+     * Number of prepared queries, a power of two.
+     */
+    private static final int QUERY_COUNT = 1024;
+
+    @Param({ "1000", "10000", "100000", "1000000" })
+    private int catalogueSize;
+
+    private SmartphoneCatalogue catalogue;
+
+    private List<Smartphone> smartphones;
+
+    private Smartphone[] queries;
+
+    private int nextQuery;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(42);
+        catalogue = CatalogueGenerator.catalogue(random, catalogueSize, 1);
+        smartphones = catalogue.stream().collect(Collectors.toList());
+        queries = new Smartphone[QUERY_COUNT];
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            queries[i] = CatalogueGenerator.criteria(random);
+        }
+    }
+
+    @Benchmark
+    public ArrayList<Smartphone> findMatches() {
+        return catalogue.findMatches(nextQuery());
+    }
+
+    @Benchmark
+    public ArrayList<Smartphone> findCheapest() {
+        return catalogue.findMatches(nextQuery(), SmartphoneSortKey.PRICE, 1);
+    }
+
+    @Benchmark
+    public ArrayList<Smartphone> linearScan() {
+        final Smartphone criteria = nextQuery();
+        final ArrayList<Smartphone> matches = new ArrayList<>();
+        for (final Smartphone smartphone : smartphones) {
+            if (matches(criteria, smartphone)) {
+                matches.add(smartphone);
+            }
+        }
+        return matches;
+    }
+
+    private Smartphone nextQuery() {
+        return queries[nextQuery++ & (QUERY_COUNT - 1)];
+    }
+
+    private static boolean matches(final Smartphone criteria, final Smartphone smartphone) {
+        return (criteria.getName() == null
+                || smartphone.getName().toLowerCase().contains(criteria.getName().toLowerCase()))
+                && (criteria.getInstalledRam() == null
+                        || smartphone.getInstalledRam().compareTo(criteria.getInstalledRam()) >= 0)
+                && (criteria.getCpuSpeed() == null || smartphone.getCpuSpeed().compareTo(criteria.getCpuSpeed()) >= 0)
+                && (criteria.getSmartphoneOs() == null || criteria.getSmartphoneOs() == smartphone.getSmartphoneOs())
+                && (criteria.getPrice() == null || smartphone.getPrice().compareTo(criteria.getPrice()) <= 0);
+    }
+}
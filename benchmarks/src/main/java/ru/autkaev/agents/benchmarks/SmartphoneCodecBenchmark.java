@@ -0,0 +1,60 @@
+package ru.autkaev.agents.benchmarks;
+
+import org.apache.commons.lang3.SerializationUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.autkaev.agents.techretail.smartphone.Smartphone;
+import ru.autkaev.agents.techretail.smartphone.SmartphoneCodec;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round-trips of PROPOSE payloads: Java serialization through {@link SerializationUtils}, still used for agents of
+ * previous versions, against {@link SmartphoneCodec}.
+ *
+ * @author Anton Utkaev
+ * @since 2026.10.18
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SmartphoneCodecBenchmark {
+
+    @Param({ "1", "10", "100", "1000" })
+    private int listSize;
+
+    private ArrayList<Smartphone> smartphones;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(42);
+        smartphones = new ArrayList<>(listSize);
+        for (int i = 0; i < listSize; i++) {
+            smartphones.add(CatalogueGenerator.smartphone(random).setSku(String.format("SKU-%06d", i)));
+        }
+    }
+
+    @Benchmark
+    public ArrayList<Smartphone> serializationUtilsRoundTrip() {
+        return SerializationUtils.deserialize(SerializationUtils.serialize(smartphones));
+    }
+
+    @Benchmark
+    public ArrayList<Smartphone> codecRoundTrip() {
+        return SmartphoneCodec.decodeList(SmartphoneCodec.encodeList(smartphones));
+    }
+}
@@ -0,0 +1,236 @@
+package ru.autkaev.agents.techretail;
+
+import jade.core.Agent;
+import jade.core.behaviours.CyclicBehaviour;
+import jade.lang.acl.ACLMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.function.Consumer;
+
+/**
+ * Единственное поведение агента, которое забирает сообщения из очереди. Каждое сообщение извлекается один раз и
+ * передается обработчику из таблицы, построенной при запуске агента по перформативу и conversation-id, вместо того
+ * чтобы каждое поведение просматривало очередь своим шаблоном.
+ * <p>
+ * Обработчик, зарегистрированный с conversation-id, имеет приоритет над обработчиком того же перформатива без него.
+ * Сообщения, для которых обработчика нет, отбрасываются.
+ * <p>
+ * Каждый вызов поведения переносит всю очередь агента в очереди приоритетов обработчиков и разбирает сообщения,
+ * начиная с самого срочного приоритета, поэтому, например, заказы обрабатываются раньше накопившихся запросов
+ * предложений, даже если пришли позже них.
+ * <p>
+ * Пакетный обработчик получает сразу все идущие подряд ожидающие сообщения своего маршрута, например, чтобы
+ * ответить на одинаковые запросы одним вычислением.
+ *
+ * @author Anton Utkaev
+ * @since 2026.10.18
+ */
+public class MessageDispatcher extends CyclicBehaviour {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MessageDispatcher.class);
+
+    /**
+     * Сколько сообщений разбирается за один вызов поведения, прежде чем уступить планировщику.
+     */
+    private final int batchSize;
+
+    /**
+     * Принятые из очереди агента, но еще не обработанные сообщения по приоритетам обработчиков.
+     */
+    private final Map<Priority, Queue<Delivery>> pending = new EnumMap<>(Priority.class);
+
+    /**
+     * Обработчики по перформативу для любого conversation-id.
+     */
+    private final Map<Integer, Route> routes = new HashMap<>();
+
+    /**
+     * Обработчики по conversation-id и перформативу.
+     */
+    private final Map<String, Map<Integer, Route>> conversationRoutes = new HashMap<>();
+
+    /**
+     * @param agent
+     *            агент, сообщения которого разбираются
+     * @param batchSize
+     *            количество сообщений за один вызов поведения
+     */
+    public MessageDispatcher(final Agent agent, final int batchSize) {
+        super(agent);
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        this.batchSize = batchSize;
+        for (final Priority priority : Priority.values()) {
+            pending.put(priority, new ArrayDeque<>());
+        }
+    }
+
+    /**
+     * Регистрация обработчика сообщений с перформативом {@code performative} и любым conversation-id.
+     *
+     * @return этот же диспетчер
+     */
+    public MessageDispatcher register(final int performative, final Consumer<ACLMessage> handler) {
+        return register(performative, Priority.NORMAL, handler);
+    }
+
+    /**
+     * Регистрация обработчика сообщений с перформативом {@code performative} и любым conversation-id, сообщения
+     * которого разбираются в порядке приоритета {@code priority}.
+     *
+     * @return этот же диспетчер
+     */
+    public MessageDispatcher register(final int performative,
+            final Priority priority,
+            final Consumer<ACLMessage> handler) {
+        routes.put(performative, new Route(priority, handler, null));
+        return this;
+    }
+
+    /**
+     * Регистрация пакетного обработчика сообщений с перформативом {@code performative} и любым conversation-id.
+     * Обработчик получает в порядке поступления все ожидающие сообщения этого маршрута, которые идут подряд в очереди
+     * приоритета {@code priority}.
+     *
+     * @return этот же диспетчер
+     */
+    public MessageDispatcher registerBatch(final int performative,
+            final Priority priority,
+            final Consumer<List<ACLMessage>> batchHandler) {
+        routes.put(performative, new Route(priority, null, batchHandler));
+        return this;
+    }
+
+    /**
+     * Регистрация обработчика сообщений с перформативом {@code performative} в диалоге {@code conversationId}.
+     *
+     * @return этот же диспетчер
+     */
+    public MessageDispatcher register(final int performative,
+            final String conversationId,
+            final Consumer<ACLMessage> handler) {
+        conversationRoutes.computeIfAbsent(conversationId, id -> new HashMap<>())
+                .put(performative, new Route(Priority.NORMAL, handler, null));
+        return this;
+    }
+
+    /**
+     * @return сообщения, ожидающие обработки в очереди агента и в очередях приоритетов диспетчера
+     */
+    public int getBacklog() {
+        int backlog = myAgent.getCurQueueSize();
+        for (final Queue<Delivery> deliveries : pending.values()) {
+            backlog += deliveries.size();
+        }
+        return backlog;
+    }
+
+    @Override
+    public void action() {
+        ACLMessage aclMessage;
+        while ((aclMessage = myAgent.receive()) != null) {
+            enqueue(aclMessage);
+        }
+        int processed = 0;
+        for (final Queue<Delivery> deliveries : pending.values()) {
+            Delivery delivery;
+            while (processed < batchSize && (delivery = deliveries.poll()) != null) {
+                processed += deliver(delivery, deliveries);
+            }
+        }
+        if (processed < batchSize) {
+            block();
+        }
+        // иначе сообщения могли остаться: уступаем другим поведениям, не блокируясь
+    }
+
+    /**
+     * @return количество обработанных сообщений
+     */
+    private int deliver(final Delivery delivery, final Queue<Delivery> deliveries) {
+        final Route route = delivery.route;
+        if (route.batchHandler == null) {
+            route.handler.accept(delivery.message);
+            return 1;
+        }
+        final List<ACLMessage> batch = new ArrayList<>();
+        batch.add(delivery.message);
+        while (deliveries.peek() != null && deliveries.peek().route == route) {
+            batch.add(deliveries.poll().message);
+        }
+        route.batchHandler.accept(batch);
+        return batch.size();
+    }
+
+    private void enqueue(final ACLMessage aclMessage) {
+        final Route route = findRoute(aclMessage);
+        if (route != null) {
+            pending.get(route.priority).add(new Delivery(aclMessage, route));
+        } else {
+            LOG.debug("Agent {} dropped unexpected {} from {}",
+                    myAgent.getLocalName(),
+                    ACLMessage.getPerformative(aclMessage.getPerformative()),
+                    aclMessage.getSender() != null ? aclMessage.getSender().getName() : null);
+        }
+    }
+
+    private Route findRoute(final ACLMessage aclMessage) {
+        final String conversationId = aclMessage.getConversationId();
+        if (conversationId != null) {
+            final Map<Integer, Route> conversation = conversationRoutes.get(conversationId);
+            if (conversation != null) {
+                final Route route = conversation.get(aclMessage.getPerformative());
+                if (route != null) {
+                    return route;
+                }
+            }
+        }
+        return routes.get(aclMessage.getPerformative());
+    }
+
+    /**
+     * Приоритеты обработчиков в порядке убывания срочности.
+     */
+    public enum Priority {
+        HIGH,
+        NORMAL
+    }
+
+    private static final class Route {
+
+        private final Priority priority;
+
+        private final Consumer<ACLMessage> handler;
+
+        private final Consumer<List<ACLMessage>> batchHandler;
+
+        Route(final Priority priority,
+                final Consumer<ACLMessage> handler,
+                final Consumer<List<ACLMessage>> batchHandler) {
+            this.priority = priority;
+            this.handler = handler;
+            this.batchHandler = batchHandler;
+        }
+    }
+
+    private static final class Delivery {
+
+        private final ACLMessage message;
+
+        private final Route route;
+
+        Delivery(final ACLMessage message, final Route route) {
+            this.message = message;
+            this.route = route;
+        }
+    }
+}
@@ -14,4 +14,44 @@ public final class ServiceDescriptionType {
     public static final String SMARTPHONE_SELL = "smartphone_sell";
 
     public static final String SMARTPHONE_SELL_CONVERSATION_ID = "smartphone_trading";
+
+    /**
+     * Свойство описания услуги с версией {@link ru.autkaev.agents.techretail.smartphone.SmartphoneCodec}, которую
+     * читает продавец. Продавцам без него покупатель отправляет критерии в java-сериализации, как агенты прежних
+     * версий.
+     */
+    public static final String CODEC_VERSION_PROPERTY = "smartphone-codec";
+
+    /**
+     * Диалог постоянного запроса: покупатель регистрирует критерии сообщением SUBSCRIBE и снимает сообщением CANCEL, а
+     * продавец присылает INFORM с подходящими смартфонами, когда они появляются на складе.
+     */
+    public static final String SMARTPHONE_WATCH_CONVERSATION_ID = "smartphone_watch";
+
+    /**
+     * Параметр CFP с максимальным количеством смартфонов в ответе продавца.
+     */
+    public static final String RESULT_LIMIT_PARAMETER = "result-limit";
+
+    /**
+     * Параметр CFP с порядком ранжирования смартфонов в ответе продавца, см.
+     * {@link ru.autkaev.agents.techretail.smartphone.SmartphoneSortKey}.
+     */
+    public static final String SORT_KEY_PARAMETER = "sort-key";
+
+    /**
+     * Параметр CFP с режимом ответа продавца.
+     */
+    public static final String REPLY_MODE_PARAMETER = "reply-mode";
+
+    /**
+     * Режим ответа, в котором продавец присылает только Парето-оптимальные по цене, памяти и частоте смартфоны.
+     */
+    public static final String SKYLINE_REPLY_MODE = "skyline";
+
+    /**
+     * Параметр ACCEPT_PROPOSAL с артикулом покупаемого смартфона. Без него продавец ищет позицию по наименованию из
+     * содержимого сообщения, как это делали агенты прежних версий.
+     */
+    public static final String SKU_PARAMETER = "sku";
 }
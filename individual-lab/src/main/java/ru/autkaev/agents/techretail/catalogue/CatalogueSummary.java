@@ -0,0 +1,129 @@
+package ru.autkaev.agents.techretail.catalogue;
+
+import ru.autkaev.agents.techretail.smartphone.Smartphone;
+import ru.autkaev.agents.techretail.smartphone.SmartphoneOs;
+
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Сводка каталога продавца, которую он публикует в свойствах описания услуги DF, чтобы покупатели не отправляли CFP
+ * продавцам, у которых заведомо нет подходящих смартфонов.
+ * <p>
+ * Сводка хранит ОС, лучшие объем памяти и частоту процессора и наименьшую цену среди позиций каталога. Критерии
+ * покупателя задают нижние границы памяти и частоты и верхнюю границу цены, поэтому подходящий смартфон может быть у
+ * продавца, только если каждая из них не хуже соответствующей границы сводки. Сводка может пропустить продавца без
+ * подходящего смартфона, но никогда не отсеет продавца с ним.
+ *
+ * @author Anton Utkaev
+ * @since 2026.10.18
+ */
+public final class CatalogueSummary {
+
+    /**
+     * Свойство с перечнем ОС через запятую. Есть в любой опубликованной сводке.
+     */
+    public static final String OS_PROPERTY = "summary-os";
+
+    public static final String MAX_RAM_PROPERTY = "summary-max-ram";
+
+    public static final String MAX_CPU_PROPERTY = "summary-max-cpu";
+
+    public static final String MIN_PRICE_PROPERTY = "summary-min-price";
+
+    private final Set<SmartphoneOs> smartphoneOs;
+
+    private final Integer maxRam;
+
+    private final Double maxCpu;
+
+    private final Double minPrice;
+
+    /**
+     * @param maxRam
+     *            наибольший объем памяти или {@code null}, если ни у одной позиции он не указан; аналогично для
+     *            частоты и цены
+     */
+    CatalogueSummary(final Set<SmartphoneOs> smartphoneOs,
+            final Integer maxRam,
+            final Double maxCpu,
+            final Double minPrice) {
+        this.smartphoneOs = smartphoneOs;
+        this.maxRam = maxRam;
+        this.maxCpu = maxCpu;
+        this.minPrice = minPrice;
+    }
+
+    /**
+     * Восстановление сводки из свойств описания услуги.
+     *
+     * @param properties
+     *            свойства по именам
+     * @return сводка или {@code null}, если продавец ее не публикует
+     * @throws IllegalArgumentException
+     *             если значение свойства не разбирается
+     */
+    public static CatalogueSummary fromProperties(final Map<String, String> properties) {
+        final String os = properties.get(OS_PROPERTY);
+        if (os == null) {
+            return null;
+        }
+        final Set<SmartphoneOs> smartphoneOs = EnumSet.noneOf(SmartphoneOs.class);
+        for (final String value : os.split(",")) {
+            if (!value.trim().isEmpty()) {
+                smartphoneOs.add(SmartphoneOs.valueOf(value.trim()));
+            }
+        }
+        final String maxRam = properties.get(MAX_RAM_PROPERTY);
+        final String maxCpu = properties.get(MAX_CPU_PROPERTY);
+        final String minPrice = properties.get(MIN_PRICE_PROPERTY);
+        return new CatalogueSummary(smartphoneOs,
+                maxRam != null ? Integer.valueOf(maxRam) : null,
+                maxCpu != null ? Double.valueOf(maxCpu) : null,
+                minPrice != null ? Double.valueOf(minPrice) : null);
+    }
+
+    /**
+     * @return свойства описания услуги по именам, незаданные границы не публикуются
+     */
+    public Map<String, String> toProperties() {
+        final Map<String, String> properties = new LinkedHashMap<>();
+        properties.put(OS_PROPERTY, smartphoneOs.stream().map(SmartphoneOs::name).collect(Collectors.joining(",")));
+        if (maxRam != null) {
+            properties.put(MAX_RAM_PROPERTY, maxRam.toString());
+        }
+        if (maxCpu != null) {
+            properties.put(MAX_CPU_PROPERTY, maxCpu.toString());
+        }
+        if (minPrice != null) {
+            properties.put(MIN_PRICE_PROPERTY, minPrice.toString());
+        }
+        return properties;
+    }
+
+    /**
+     * @param criteria
+     *            критерии покупателя, незаданные поля не ограничивают выборку
+     * @return {@code false}, если подходящих смартфонов у продавца заведомо нет
+     */
+    public boolean mayMatch(final Smartphone criteria) {
+        if (criteria.getSmartphoneOs() != null && !smartphoneOs.contains(criteria.getSmartphoneOs())) {
+            return false;
+        }
+        if (criteria.getInstalledRam() != null && (maxRam == null || maxRam < criteria.getInstalledRam())) {
+            return false;
+        }
+        if (criteria.getCpuSpeed() != null && (maxCpu == null || Double.compare(maxCpu, criteria.getCpuSpeed()) < 0)) {
+            return false;
+        }
+        return criteria.getPrice() == null || minPrice != null && Double.compare(minPrice, criteria.getPrice()) <= 0;
+    }
+
+    @Override
+    public String toString() {
+        return toProperties().toString();
+    }
+}
@@ -0,0 +1,152 @@
+package ru.autkaev.agents.techretail.catalogue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Индекс наименований каталога для поиска по подстроке.
+ * <p>
+ * Для каждой тройки подряд идущих символов хранится список наименований словаря, в которые она входит, а для каждого
+ * наименования - список строк каталога. Поиск пересекает списки троек искомой строки, начиная с самого короткого, и
+ * проверяет вхождение подстроки только у оставшихся наименований.
+ *
+ * @author Anton Utkaev
+ * @since 2026.10.18
+ */
+final class NameIndex {
+
+    /**
+     * Длина n-граммы. Более короткие запросы индекс не сужает.
+     */
+    private static final int GRAM = 3;
+
+    /**
+     * Номера наименований по n-грамме.
+     */
+    private final Map<Long, Postings> namesByTrigram = new HashMap<>();
+
+    /**
+     * Строки каталога по номеру наименования.
+     */
+    private final List<Postings> rowsByName = new ArrayList<>();
+
+    /**
+     * Добавление наименования словаря. Номера наименований должны возрастать.
+     *
+     * @param lowerCaseName
+     *            наименование в нижнем регистре
+     */
+    void addName(final int nameId, final String lowerCaseName) {
+        while (rowsByName.size() <= nameId) {
+            rowsByName.add(new Postings());
+        }
+        for (int i = 0; i + GRAM <= lowerCaseName.length(); i++) {
+            final Postings names = namesByTrigram.computeIfAbsent(trigram(lowerCaseName, i), key -> new Postings());
+            // повторная n-грамма того же наименования уже в конце списка
+            if (names.size == 0 || names.values[names.size - 1] != nameId) {
+                names.add(nameId);
+            }
+        }
+    }
+
+    /**
+     * Добавление строки каталога. Номера строк должны возрастать.
+     */
+    void addRow(final int nameId, final int row) {
+        rowsByName.get(nameId).add(row);
+    }
+
+    void clear() {
+        namesByTrigram.clear();
+        rowsByName.clear();
+    }
+
+    /**
+     * @param lowerCaseQuery
+     *            искомая подстрока в нижнем регистре
+     * @param lowerCaseNames
+     *            наименования словаря в нижнем регистре
+     * @return строки каталога по возрастанию, наименования которых содержат подстроку, включая проданные позиции, или
+     *         {@code null}, если подстрока короче n-граммы
+     */
+    int[] rows(final String lowerCaseQuery, final List<String> lowerCaseNames) {
+        if (lowerCaseQuery.length() < GRAM) {
+            return null;
+        }
+        final List<Postings> postings = new ArrayList<>();
+        for (int i = 0; i + GRAM <= lowerCaseQuery.length(); i++) {
+            final Postings names = namesByTrigram.get(trigram(lowerCaseQuery, i));
+            if (names == null) {
+                return new int[0];
+            }
+            postings.add(names);
+        }
+        postings.sort((left, right) -> Integer.compare(left.size, right.size));
+
+        int[] nameIds = Arrays.copyOf(postings.get(0).values, postings.get(0).size);
+        for (int i = 1; i < postings.size() && nameIds.length > 0; i++) {
+            nameIds = intersect(nameIds, postings.get(i));
+        }
+
+        int count = 0;
+        int[] rows = new int[16];
+        for (final int nameId : nameIds) {
+            // общие n-граммы еще не означают вхождения подстроки целиком
+            if (!lowerCaseNames.get(nameId).contains(lowerCaseQuery)) {
+                continue;
+            }
+            final Postings nameRows = rowsByName.get(nameId);
+            if (count + nameRows.size > rows.length) {
+                rows = Arrays.copyOf(rows, Math.max(rows.length * 2, count + nameRows.size));
+            }
+            System.arraycopy(nameRows.values, 0, rows, count, nameRows.size);
+            count += nameRows.size;
+        }
+        rows = Arrays.copyOf(rows, count);
+        Arrays.sort(rows);
+        return rows;
+    }
+
+    private static int[] intersect(final int[] sorted, final Postings postings) {
+        final int[] common = new int[Math.min(sorted.length, postings.size)];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < sorted.length && j < postings.size) {
+            if (sorted[i] < postings.values[j]) {
+                i++;
+            } else if (sorted[i] > postings.values[j]) {
+                j++;
+            } else {
+                common[count++] = sorted[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(common, count);
+    }
+
+    private static Long trigram(final String value, final int from) {
+        return (long) value.charAt(from) << 32 | (long) value.charAt(from + 1) << 16 | value.charAt(from + 2);
+    }
+
+    /**
+     * Возрастающий список номеров.
+     */
+    private static final class Postings {
+
+        private int[] values = new int[4];
+
+        private int size;
+
+        void add(final int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
@@ -0,0 +1,1111 @@
+package ru.autkaev.agents.techretail.catalogue;
+
+import ru.autkaev.agents.techretail.smartphone.Smartphone;
+import ru.autkaev.agents.techretail.smartphone.SmartphoneOs;
+import ru.autkaev.agents.techretail.smartphone.SmartphoneSortKey;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Каталог смартфонов продавца с индексом для подбора по критериям покупателя.
+ * <p>
+ * Товары разбиты на разделы по {@link SmartphoneOs}, внутри раздела поддерживаются отсортированные индексы по цене,
+ * объему памяти и частоте процессора. Запрос читает только кандидатов из самого узкого из заданных диапазонов, а
+ * остальные критерии проверяет уже на них. Результат совпадает с полным перебором каталога, включая порядок.
+ * <p>
+ * Каждая позиция каталога - это модель со своим артикулом и остатком на складе: одинаковые смартфоны при добавлении
+ * попадают в одну позицию, а продажа по артикулу уменьшает остаток за константное время. Позиция убирается из
+ * каталога, когда остаток заканчивается.
+ * <p>
+ * Позиции хранятся по столбцам в массивах примитивов, а наименования - в словаре, поэтому объекты {@link Smartphone}
+ * создаются только для результатов подбора. Большие выборки проверяются параллельно в общем пуле ForkJoin.
+ * <p>
+ * Запрос по подстроке наименования берет кандидатов из {@link NameIndex}, если тот отбирает меньше строк, чем индексы
+ * атрибутов.
+ * <p>
+ * Каталог не потокобезопасен: агент-владелец обращается к нему только из своего потока.
+ *
+ * @author Anton Utkaev
+ * @since 2026.10.18
+ */
+public class SmartphoneCatalogue {
+
+    /**
+     * Запас удаленных позиций, после которого каталог уплотняется.
+     */
+    private static final int COMPACTION_SLACK = 64;
+
+    /**
+     * Количество кандидатов, начиная с которого проверка критериев распределяется по потокам.
+     */
+    private static final int PARALLEL_SCAN_THRESHOLD = 1 << 15;
+
+    /**
+     * Количество кандидатов, которое проверяет одна задача параллельного перебора.
+     */
+    private static final int SCAN_CHUNK = 1 << 13;
+
+    /**
+     * Значение столбца памяти или частоты для смартфона без этого атрибута: меньше любого заданного значения.
+     */
+    private static final long MISSING_LOW = Long.MIN_VALUE;
+
+    /**
+     * Значение столбца цены для смартфона без цены: больше любой заданной цены.
+     */
+    private static final long MISSING_HIGH = Long.MAX_VALUE;
+
+    /**
+     * Значение столбца памяти для смартфона без объема памяти.
+     */
+    private static final int MISSING_RAM = Integer.MIN_VALUE;
+
+    /**
+     * Длина участка, который сортировка индекса упорядочивает вставками.
+     */
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    private static final byte MISSING_OS = -1;
+
+    private static final int MISSING_NAME = -1;
+
+    /**
+     * Значение критерия ОС, которому подходит любая ОС.
+     */
+    private static final int ANY_OS = -2;
+
+    private static final SmartphoneOs[] OS_VALUES = SmartphoneOs.values();
+
+    private static final int[] NO_ROWS = new int[0];
+
+    /**
+     * Количество строк, включая проданные позиции, которые ждут уплотнения.
+     */
+    private int rowCount;
+
+    /**
+     * Артикулы по строкам каталога в порядке добавления. У проданных позиций - {@code null}.
+     */
+    private String[] skus = new String[16];
+
+    /**
+     * Номера наименований в словаре {@link #names} по строкам каталога.
+     */
+    private int[] nameIds = new int[16];
+
+    /**
+     * Объем памяти по строкам каталога.
+     */
+    private int[] ramValues = new int[16];
+
+    /**
+     * Частота процессора по строкам каталога, см. {@link #sortableBits(double)}.
+     */
+    private long[] cpuKeys = new long[16];
+
+    /**
+     * Цена по строкам каталога, см. {@link #sortableBits(double)}.
+     */
+    private long[] priceKeys = new long[16];
+
+    /**
+     * Порядковый номер {@link SmartphoneOs} по строкам каталога.
+     */
+    private byte[] osOrdinals = new byte[16];
+
+    /**
+     * Остаток на складе по строкам каталога.
+     */
+    private int[] stock = new int[16];
+
+    /**
+     * Словарь наименований: одинаковые наименования разных позиций хранятся один раз.
+     */
+    private final List<String> names = new ArrayList<>();
+
+    /**
+     * Наименования словаря в нижнем регистре для подбора по подстроке.
+     */
+    private final List<String> lowerCaseNames = new ArrayList<>();
+
+    private final Map<String, Integer> nameIdsByName = new HashMap<>();
+
+    private final NameIndex nameIndex = new NameIndex();
+
+    /**
+     * Строки каталога по артикулу.
+     */
+    private final Map<String, Integer> rowsBySku = new HashMap<>();
+
+    /**
+     * Артикулы по описанию модели, чтобы одинаковые смартфоны попадали в одну позицию.
+     */
+    private final Map<List<Object>, String> skusByModel = new HashMap<>();
+
+    private long nextSku = 1;
+
+    private final Map<SmartphoneOs, Partition> partitions = new EnumMap<>(SmartphoneOs.class);
+
+    /**
+     * Раздел для смартфонов без указанной ОС.
+     */
+    private final Partition unknownOsPartition = new Partition();
+
+    /**
+     * Количество позиций в наличии.
+     */
+    private int size;
+
+    /**
+     * Версия состава каталога. Меняется, когда позиция появляется или исчезает, но не при изменении остатка, который
+     * на результат подбора не влияет.
+     */
+    private long version;
+
+    public String add(final Smartphone smartphone) {
+        return add(smartphone, 1);
+    }
+
+    /**
+     * Пополнение склада.
+     * <p>
+     * Смартфон с артикулом пополняет позицию с этим артикулом, если это позиция той же модели, иначе - позицию такой же
+     * модели. Если позиции нет, она создается. Смартфону присваивается артикул пополненной или созданной позиции.
+     *
+     * @param smartphone
+     *            смартфон
+     * @param quantity
+     *            количество единиц
+     * @return артикул позиции
+     */
+    public String add(final Smartphone smartphone, final int quantity) {
+        Objects.requireNonNull(smartphone);
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Quantity must be positive: " + quantity);
+        }
+        final List<Object> model = modelOf(smartphone);
+        String sku = smartphone.getSku();
+        Integer existingRow = sku != null ? rowsBySku.get(sku) : null;
+        if (existingRow != null && !model.equals(modelOf(smartphoneAt(existingRow)))) {
+            // артикул занят другой моделью, например, при импорте из чужого каталога
+            sku = null;
+            existingRow = null;
+        }
+        if (sku == null) {
+            sku = skusByModel.get(model);
+            existingRow = sku != null ? rowsBySku.get(sku) : null;
+        }
+        if (existingRow != null) {
+            stock[existingRow] += quantity;
+            smartphone.setSku(sku);
+            return sku;
+        }
+        while (sku == null || rowsBySku.containsKey(sku)) {
+            sku = String.format("SKU-%06d", nextSku++);
+        }
+        smartphone.setSku(sku);
+
+        final int row = rowCount;
+        if (row == skus.length) {
+            grow(row * 2);
+        }
+        skus[row] = sku;
+        nameIds[row] = nameIdOf(smartphone.getName());
+        if (nameIds[row] != MISSING_NAME) {
+            nameIndex.addRow(nameIds[row], row);
+        }
+        ramValues[row] = smartphone.getInstalledRam() != null ? smartphone.getInstalledRam() : MISSING_RAM;
+        cpuKeys[row] = smartphone.getCpuSpeed() != null ? sortableBits(smartphone.getCpuSpeed()) : MISSING_LOW;
+        priceKeys[row] = smartphone.getPrice() != null ? sortableBits(smartphone.getPrice()) : MISSING_HIGH;
+        osOrdinals[row] =
+                smartphone.getSmartphoneOs() != null ? (byte) smartphone.getSmartphoneOs().ordinal() : MISSING_OS;
+        stock[row] = quantity;
+        rowCount++;
+        rowsBySku.put(sku, row);
+        skusByModel.putIfAbsent(model, sku);
+        partitionOf(smartphone.getSmartphoneOs()).add(row);
+        size++;
+        version++;
+        return sku;
+    }
+
+    /**
+     * Добавление партии смартфонов. Индексы пересобираются один раз при первом следующем запросе.
+     *
+     * @param smartphones
+     *            добавляемые смартфоны
+     */
+    public void addAll(final Collection<Smartphone> smartphones) {
+        smartphones.forEach(this::add);
+    }
+
+    /**
+     * Пополнение склада всеми позициями другого каталога вместе с их артикулами и остатками.
+     *
+     * @param catalogue
+     *            каталог-источник
+     */
+    public void addAll(final SmartphoneCatalogue catalogue) {
+        for (int row = 0; row < catalogue.rowCount; row++) {
+            if (catalogue.skus[row] != null) {
+                add(catalogue.smartphoneAt(row), catalogue.stock[row]);
+            }
+        }
+    }
+
+    /**
+     * Продажа одной единицы по артикулу.
+     *
+     * @param sku
+     *            артикул
+     * @return {@code true}, если позиция была в наличии
+     */
+    public boolean purchase(final String sku) {
+        final Integer row = sku != null ? rowsBySku.get(sku) : null;
+        if (row == null) {
+            return false;
+        }
+        if (--stock[row] == 0) {
+            removeRow(row);
+            compactIfSparse();
+        }
+        return true;
+    }
+
+    /**
+     * @return остаток на складе по артикулу, {@code 0} для неизвестного или распроданного артикула
+     */
+    public int quantity(final String sku) {
+        final Integer row = sku != null ? rowsBySku.get(sku) : null;
+        return row != null ? stock[row] : 0;
+    }
+
+    /**
+     * Удаление всех позиций, подходящих под условие, вместе с остатками.
+     *
+     * @param filter
+     *            условие удаления
+     * @return {@code true}, если что-то было удалено
+     */
+    public boolean removeIf(final Predicate<Smartphone> filter) {
+        boolean removed = false;
+        for (int row = 0; row < rowCount; row++) {
+            if (skus[row] != null && filter.test(smartphoneAt(row))) {
+                removeRow(row);
+                removed = true;
+            }
+        }
+        if (removed) {
+            compactIfSparse();
+        }
+        return removed;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return версия состава каталога: пока она не изменилась, подбор по одним и тем же критериям дает тот же результат
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return сводка позиций в наличии для публикации в DF
+     */
+    public CatalogueSummary summary() {
+        final Set<SmartphoneOs> smartphoneOs = EnumSet.noneOf(SmartphoneOs.class);
+        int maxRam = MISSING_RAM;
+        long maxCpu = MISSING_LOW;
+        long minPrice = MISSING_HIGH;
+        for (int row = 0; row < rowCount; row++) {
+            if (skus[row] == null) {
+                continue;
+            }
+            if (osOrdinals[row] != MISSING_OS) {
+                smartphoneOs.add(OS_VALUES[osOrdinals[row]]);
+            }
+            maxRam = Math.max(maxRam, ramValues[row]);
+            maxCpu = Math.max(maxCpu, cpuKeys[row]);
+            minPrice = Math.min(minPrice, priceKeys[row]);
+        }
+        return new CatalogueSummary(smartphoneOs,
+                maxRam != MISSING_RAM ? maxRam : null,
+                maxCpu != MISSING_LOW ? doubleOf(maxCpu) : null,
+                minPrice != MISSING_HIGH ? doubleOf(minPrice) : null);
+    }
+
+    /**
+     * @return позиции в наличии в порядке добавления, каждый раз новыми объектами
+     */
+    public Stream<Smartphone> stream() {
+        return IntStream.range(0, rowCount).filter(row -> skus[row] != null).mapToObj(this::smartphoneAt);
+    }
+
+    /**
+     * Получение списка подходящих смартфонов под критерии пользователя.
+     *
+     * @param criteria
+     *            критерии пользователя, незаданные поля не ограничивают выборку
+     * @return список подходящих смартфонов в порядке добавления в каталог
+     */
+    public ArrayList<Smartphone> findMatches(final Smartphone criteria) {
+        final Query query = new Query(criteria);
+        final int[] nameCandidates = nameCandidates(criteria, query);
+        final int[] candidates;
+        if (nameCandidates != null) {
+            candidates = nameCandidates;
+        } else if (criteria.getSmartphoneOs() != null) {
+            final Partition partition = partitions.get(criteria.getSmartphoneOs());
+            candidates = partition != null ? partition.candidates(criteria) : NO_ROWS;
+        } else {
+            candidates = Stream.concat(partitions.values().stream(), Stream.of(unknownOsPartition))
+                    .map(partition -> partition.candidates(criteria))
+                    .flatMapToInt(IntStream::of)
+                    .sorted()
+                    .toArray();
+        }
+
+        final int[] matchingRows = scan(query, candidates);
+        final ArrayList<Smartphone> matches = new ArrayList<>(matchingRows.length);
+        for (final int row : matchingRows) {
+            matches.add(smartphoneAt(row));
+        }
+        return matches;
+    }
+
+    /**
+     * Получение лучших подходящих смартфонов без построения полного списка совпадений.
+     *
+     * @param criteria
+     *            критерии пользователя, незаданные поля не ограничивают выборку
+     * @param sortKey
+     *            порядок ранжирования
+     * @param limit
+     *            максимальное количество смартфонов в результате
+     * @return не более {@code limit} смартфонов, упорядоченных по {@code sortKey}, при равенстве - в порядке добавления
+     *         в каталог
+     */
+    public ArrayList<Smartphone> findMatches(final Smartphone criteria,
+            final SmartphoneSortKey sortKey,
+            final int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Result limit must be positive: " + limit);
+        }
+        final TopRows top = new TopRows(sortKey, limit);
+        final Query query = new Query(criteria);
+        final int[] nameCandidates = nameCandidates(criteria, query);
+        if (nameCandidates != null) {
+            for (final int row : scan(query, nameCandidates)) {
+                top.offer(row);
+            }
+        } else if (criteria.getSmartphoneOs() != null) {
+            final Partition partition = partitions.get(criteria.getSmartphoneOs());
+            if (partition != null) {
+                partition.collectTop(criteria, query, top);
+            }
+        } else {
+            partitions.values().forEach(partition -> partition.collectTop(criteria, query, top));
+            unknownOsPartition.collectTop(criteria, query, top);
+        }
+        return top.toList();
+    }
+
+    /**
+     * Кандидаты из индекса наименований, если он отбирает меньше строк, чем индексы атрибутов разделов подходящей ОС.
+     *
+     * @return номера строк каталога по возрастанию или {@code null}, если выгоднее искать по индексам атрибутов
+     */
+    private int[] nameCandidates(final Smartphone criteria, final Query query) {
+        if (query.lowerCaseName == null) {
+            return null;
+        }
+        final int[] rows = nameIndex.rows(query.lowerCaseName, lowerCaseNames);
+        if (rows == null) {
+            return null;
+        }
+        long estimate = 0;
+        if (criteria.getSmartphoneOs() != null) {
+            final Partition partition = partitions.get(criteria.getSmartphoneOs());
+            estimate = partition != null ? partition.estimate(criteria) : 0;
+        } else {
+            for (final Partition partition : partitions.values()) {
+                estimate += partition.estimate(criteria);
+            }
+            estimate += unknownOsPartition.estimate(criteria);
+        }
+        return rows.length < estimate ? rows : null;
+    }
+
+    /**
+     * Проверка кандидатов на соответствие критериям, большие выборки - параллельно.
+     *
+     * @param candidates
+     *            номера строк каталога одного или нескольких разделов подходящей ОС
+     * @return подходящие строки в исходном порядке
+     */
+    private int[] scan(final Query query, final int[] candidates) {
+        if (candidates.length < PARALLEL_SCAN_THRESHOLD) {
+            return query.filter(candidates, 0, candidates.length);
+        }
+        return ForkJoinPool.commonPool().invoke(new ScanTask(query, candidates, 0, candidates.length));
+    }
+
+    private Smartphone smartphoneAt(final int row) {
+        return new Smartphone().setSku(skus[row])
+                .setName(nameIds[row] != MISSING_NAME ? names.get(nameIds[row]) : null)
+                .setInstalledRam(ramValues[row] != MISSING_RAM ? Integer.valueOf(ramValues[row]) : null)
+                .setCpuSpeed(cpuKeys[row] != MISSING_LOW ? Double.valueOf(doubleOf(cpuKeys[row])) : null)
+                .setSmartphoneOs(osOrdinals[row] != MISSING_OS ? OS_VALUES[osOrdinals[row]] : null)
+                .setPrice(priceKeys[row] != MISSING_HIGH ? Double.valueOf(doubleOf(priceKeys[row])) : null);
+    }
+
+    private int nameIdOf(final String name) {
+        if (name == null) {
+            return MISSING_NAME;
+        }
+        return nameIdsByName.computeIfAbsent(name, newName -> {
+            final int nameId = names.size();
+            final String lowerCaseName = newName.toLowerCase();
+            names.add(newName);
+            lowerCaseNames.add(lowerCaseName);
+            nameIndex.addName(nameId, lowerCaseName);
+            return nameId;
+        });
+    }
+
+    /**
+     * @return {@code true}, если у позиции нет значения атрибута, по которому ранжируются смартфоны
+     */
+    private boolean isMissing(final SmartphoneSortKey key, final int row) {
+        switch (key) {
+            case PRICE:
+                return priceKeys[row] == MISSING_HIGH;
+            case RAM:
+                return ramValues[row] == MISSING_RAM;
+            case CPU:
+                return cpuKeys[row] == MISSING_LOW;
+            default:
+                throw new IllegalArgumentException("Unknown sort key: " + key);
+        }
+    }
+
+    /**
+     * @return ранг позиции по ключу сортировки: чем меньше, тем выше позиция в ответе, позиции без значения - в конце
+     */
+    private long rank(final SmartphoneSortKey key, final int row) {
+        switch (key) {
+            case PRICE:
+                return priceKeys[row];
+            case RAM:
+                return ~(long) ramValues[row];
+            case CPU:
+                return ~cpuKeys[row];
+            default:
+                throw new IllegalArgumentException("Unknown sort key: " + key);
+        }
+    }
+
+    /**
+     * @return значение столбца атрибута в порядке возрастания атрибута
+     */
+    private long keyOf(final SmartphoneSortKey key, final int row) {
+        switch (key) {
+            case PRICE:
+                return priceKeys[row];
+            case RAM:
+                return ramValues[row];
+            case CPU:
+                return cpuKeys[row];
+            default:
+                throw new IllegalArgumentException("Unknown sort key: " + key);
+        }
+    }
+
+    private static List<Object> modelOf(final Smartphone smartphone) {
+        return Arrays.asList(smartphone.getName(),
+                smartphone.getInstalledRam(),
+                smartphone.getCpuSpeed(),
+                smartphone.getSmartphoneOs(),
+                smartphone.getPrice());
+    }
+
+    private void grow(final int capacity) {
+        skus = Arrays.copyOf(skus, capacity);
+        nameIds = Arrays.copyOf(nameIds, capacity);
+        ramValues = Arrays.copyOf(ramValues, capacity);
+        cpuKeys = Arrays.copyOf(cpuKeys, capacity);
+        priceKeys = Arrays.copyOf(priceKeys, capacity);
+        osOrdinals = Arrays.copyOf(osOrdinals, capacity);
+        stock = Arrays.copyOf(stock, capacity);
+    }
+
+    private void removeRow(final int row) {
+        final Smartphone smartphone = smartphoneAt(row);
+        skus[row] = null;
+        stock[row] = 0;
+        rowsBySku.remove(smartphone.getSku());
+        skusByModel.remove(modelOf(smartphone), smartphone.getSku());
+        size--;
+        version++;
+    }
+
+    private void compactIfSparse() {
+        if (rowCount - size > size + COMPACTION_SLACK) {
+            compact();
+        }
+    }
+
+    private Partition partitionOf(final SmartphoneOs smartphoneOs) {
+        return smartphoneOs != null
+                ? partitions.computeIfAbsent(smartphoneOs, os -> new Partition())
+                : unknownOsPartition;
+    }
+
+    /**
+     * Пересборка каталога без удаленных позиций и неиспользуемых наименований. Артикулы и остатки сохраняются.
+     */
+    private void compact() {
+        final List<Smartphone> alive = new ArrayList<>(size);
+        final int[] aliveStock = new int[size];
+        for (int row = 0; row < rowCount; row++) {
+            if (skus[row] != null) {
+                aliveStock[alive.size()] = stock[row];
+                alive.add(smartphoneAt(row));
+            }
+        }
+        rowCount = 0;
+        Arrays.fill(skus, null);
+        names.clear();
+        lowerCaseNames.clear();
+        nameIdsByName.clear();
+        nameIndex.clear();
+        rowsBySku.clear();
+        skusByModel.clear();
+        partitions.clear();
+        unknownOsPartition.clear();
+        size = 0;
+        for (int i = 0; i < alive.size(); i++) {
+            add(alive.get(i), aliveStock[i]);
+        }
+    }
+
+    /**
+     * Ключ сортировки для {@code double}, порядок которого совпадает с {@link Double#compare(double, double)}.
+     */
+    static long sortableBits(final double value) {
+        final long bits = Double.doubleToLongBits(value);
+        return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+    }
+
+    /**
+     * Обратное к {@link #sortableBits(double)} преобразование.
+     */
+    static double doubleOf(final long sortableBits) {
+        return Double.longBitsToDouble(sortableBits ^ ((sortableBits >> 63) & Long.MAX_VALUE));
+    }
+
+    /**
+     * Критерии пользователя, приведенные к границам столбцов каталога. Незаданный критерий превращается в границу,
+     * которую проходит любое значение, включая отсутствующее, поэтому проверка строки обходится без ветвлений по
+     * критериям.
+     */
+    private final class Query {
+
+        /**
+         * Порядковый номер ОС или {@link #ANY_OS}.
+         */
+        private final int os;
+
+        private final long minRam;
+
+        private final long minCpu;
+
+        private final long maxPrice;
+
+        private final String lowerCaseName;
+
+        /**
+         * Результаты проверки наименований словаря: {@code 0} - не проверено, {@code 1} - подходит, {@code 2} - нет.
+         * Параллельные задачи могут проверить одно наименование дважды, но запишут одинаковый результат.
+         */
+        private final byte[] nameMatches;
+
+        Query(final Smartphone criteria) {
+            this.os = criteria.getSmartphoneOs() != null ? criteria.getSmartphoneOs().ordinal() : ANY_OS;
+            this.minRam = criteria.getInstalledRam() != null ? criteria.getInstalledRam() : MISSING_LOW;
+            this.minCpu = criteria.getCpuSpeed() != null ? sortableBits(criteria.getCpuSpeed()) : MISSING_LOW;
+            this.maxPrice = criteria.getPrice() != null ? sortableBits(criteria.getPrice()) : MISSING_HIGH;
+            this.lowerCaseName = criteria.getName() != null ? criteria.getName().toLowerCase() : null;
+            this.nameMatches = lowerCaseName != null ? new byte[names.size()] : null;
+        }
+
+        boolean test(final int row) {
+            final boolean inRange = (ramValues[row] >= minRam) & (cpuKeys[row] >= minCpu) & (priceKeys[row] <= maxPrice)
+                    & (os == ANY_OS | osOrdinals[row] == os);
+            return inRange && skus[row] != null && (nameMatches == null || nameMatches(nameIds[row]));
+        }
+
+        /**
+         * @return строки {@code candidates[from, to)}, подходящие под критерии, в исходном порядке
+         */
+        int[] filter(final int[] candidates, final int from, final int to) {
+            final int[] matching = new int[to - from];
+            int count = 0;
+            for (int i = from; i < to; i++) {
+                final int row = candidates[i];
+                matching[count] = row;
+                count += test(row) ? 1 : 0;
+            }
+            return count == matching.length ? matching : Arrays.copyOf(matching, count);
+        }
+
+        private boolean nameMatches(final int nameId) {
+            if (nameId == MISSING_NAME) {
+                return false;
+            }
+            if (nameMatches[nameId] == 0) {
+                nameMatches[nameId] = lowerCaseNames.get(nameId).contains(lowerCaseName) ? (byte) 1 : (byte) 2;
+            }
+            return nameMatches[nameId] == 1;
+        }
+    }
+
+    /**
+     * Параллельная проверка кандидатов: выборка делится пополам, пока не станет меньше {@link #SCAN_CHUNK}.
+     */
+    private static final class ScanTask extends RecursiveTask<int[]> {
+
+        private final Query query;
+
+        private final int[] candidates;
+
+        private final int from;
+
+        private final int to;
+
+        ScanTask(final Query query, final int[] candidates, final int from, final int to) {
+            this.query = query;
+            this.candidates = candidates;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected int[] compute() {
+            if (to - from <= SCAN_CHUNK) {
+                return query.filter(candidates, from, to);
+            }
+            final int middle = (from + to) >>> 1;
+            final ScanTask left = new ScanTask(query, candidates, from, middle);
+            left.fork();
+            final int[] right = new ScanTask(query, candidates, middle, to).compute();
+            final int[] leftRows = left.join();
+            final int[] rows = Arrays.copyOf(leftRows, leftRows.length + right.length);
+            System.arraycopy(right, 0, rows, leftRows.length, right.length);
+            return rows;
+        }
+    }
+
+    /**
+     * Раздел каталога с товарами одной ОС.
+     */
+    private final class Partition {
+
+        private int[] partitionRows = new int[16];
+
+        private int partitionSize;
+
+        /**
+         * Признак того, что индексы устарели и должны быть пересобраны перед чтением.
+         */
+        private boolean dirty = true;
+
+        private SortedIndex byPrice;
+
+        private SortedIndex byRam;
+
+        private SortedIndex byCpu;
+
+        void add(final int row) {
+            if (partitionSize == partitionRows.length) {
+                partitionRows = Arrays.copyOf(partitionRows, Math.max(16, partitionSize * 2));
+            }
+            partitionRows[partitionSize++] = row;
+            dirty = true;
+        }
+
+        void clear() {
+            partitionSize = 0;
+            dirty = true;
+        }
+
+        /**
+         * @return количество кандидатов, которое вернет {@link #candidates(Smartphone)}
+         */
+        int estimate(final Smartphone criteria) {
+            refresh();
+            final Range narrowest = narrowestRange(criteria);
+            return narrowest != null ? narrowest.size() : partitionSize;
+        }
+
+        /**
+         * Получение кандидатов из самого узкого диапазона среди заданных критериев.
+         *
+         * @param criteria
+         *            критерии пользователя
+         * @return номера строк каталога по возрастанию
+         */
+        int[] candidates(final Smartphone criteria) {
+            refresh();
+            final Range narrowest = narrowestRange(criteria);
+            if (narrowest == null) {
+                return Arrays.copyOf(partitionRows, partitionSize);
+            }
+            final int[] candidates = Arrays.copyOfRange(narrowest.index.rows, narrowest.from, narrowest.to);
+            Arrays.sort(candidates);
+            return candidates;
+        }
+
+        /**
+         * Отбор лучших подходящих смартфонов раздела в ограниченную кучу.
+         * <p>
+         * Если критерий по атрибуту сортировки не уже остальных, раздел обходится по индексу этого атрибута от лучших
+         * значений к худшим и обход прекращается, как только куча заполнена и следующий смартфон заведомо хуже.
+         *
+         * @param top
+         *            куча лучших строк каталога
+         */
+        void collectTop(final Smartphone criteria, final Query query, final TopRows top) {
+            refresh();
+            final SmartphoneSortKey sortKey = top.sortKey;
+            final SortedIndex sortIndex = index(sortKey);
+            final Range ownRange = range(sortKey, criteria);
+            final Range walk = ownRange != null ? ownRange : new Range(sortIndex, 0, sortIndex.rows.length);
+            final Range narrowest = narrowestRange(criteria);
+            if (narrowest != null && narrowest.index != sortIndex && narrowest.size() < walk.size()) {
+                final int[] candidates = Arrays.copyOfRange(narrowest.index.rows, narrowest.from, narrowest.to);
+                for (final int row : scan(query, candidates)) {
+                    top.offer(row);
+                }
+                return;
+            }
+
+            final boolean ascending = sortKey == SmartphoneSortKey.PRICE;
+            for (int i = 0; i < walk.size(); i++) {
+                final int row = walk.index.rows[ascending ? walk.from + i : walk.to - 1 - i];
+                if (!query.test(row)) {
+                    continue;
+                }
+                if (top.isWorseThanAll(row)) {
+                    break;
+                }
+                top.offer(row);
+            }
+
+            // смартфоны без значения атрибута сортировки в индекс не попали, но без критерия по нему тоже подходят
+            if (ownRange == null && sortIndex.rows.length < partitionSize) {
+                for (int i = 0; i < partitionSize; i++) {
+                    final int row = partitionRows[i];
+                    if (isMissing(sortKey, row) && query.test(row)) {
+                        top.offer(row);
+                    }
+                }
+            }
+        }
+
+        private void refresh() {
+            if (dirty) {
+                rebuild();
+            }
+        }
+
+        private Range narrowestRange(final Smartphone criteria) {
+            Range narrowest = null;
+            for (final SmartphoneSortKey key : SmartphoneSortKey.values()) {
+                final Range range = range(key, criteria);
+                if (range != null && (narrowest == null || range.size() < narrowest.size())) {
+                    narrowest = range;
+                }
+            }
+            return narrowest;
+        }
+
+        /**
+         * @return диапазон индекса атрибута, допустимый критерием пользователя, или {@code null}, если критерий по
+         *         атрибуту не задан
+         */
+        private Range range(final SmartphoneSortKey key, final Smartphone criteria) {
+            switch (key) {
+                case PRICE:
+                    return criteria.getPrice() == null
+                            ? null
+                            : new Range(byPrice, 0, byPrice.upperBound(sortableBits(criteria.getPrice())));
+                case RAM:
+                    return criteria.getInstalledRam() == null
+                            ? null
+                            : new Range(byRam, byRam.lowerBound(criteria.getInstalledRam()), byRam.rows.length);
+                case CPU:
+                    return criteria.getCpuSpeed() == null
+                            ? null
+                            : new Range(byCpu,
+                                    byCpu.lowerBound(sortableBits(criteria.getCpuSpeed())),
+                                    byCpu.rows.length);
+                default:
+                    throw new IllegalArgumentException("Unknown sort key: " + key);
+            }
+        }
+
+        private SortedIndex index(final SmartphoneSortKey key) {
+            switch (key) {
+                case PRICE:
+                    return byPrice;
+                case RAM:
+                    return byRam;
+                case CPU:
+                    return byCpu;
+                default:
+                    throw new IllegalArgumentException("Unknown sort key: " + key);
+            }
+        }
+
+        private void rebuild() {
+            // проданные позиции выбрасываются из раздела заодно с пересборкой индексов
+            partitionRows = IntStream.range(0, partitionSize)
+                    .map(i -> partitionRows[i])
+                    .filter(row -> skus[row] != null)
+                    .toArray();
+            partitionSize = partitionRows.length;
+            byPrice = indexBy(SmartphoneSortKey.PRICE);
+            byRam = indexBy(SmartphoneSortKey.RAM);
+            byCpu = indexBy(SmartphoneSortKey.CPU);
+            dirty = false;
+        }
+
+        /**
+         * Индекс по атрибуту строк раздела, у которых он задан. Строки с одинаковым значением остаются в порядке
+         * раздела.
+         */
+        private SortedIndex indexBy(final SmartphoneSortKey key) {
+            int count = 0;
+            for (final int row : partitionRows) {
+                count += isMissing(key, row) ? 0 : 1;
+            }
+            final int[] rows = new int[count];
+            final long[] keys = new long[count];
+            int i = 0;
+            for (final int row : partitionRows) {
+                if (!isMissing(key, row)) {
+                    rows[i] = row;
+                    keys[i] = keyOf(key, row);
+                    i++;
+                }
+            }
+            SortedIndex.sort(rows, keys);
+            return new SortedIndex(rows, keys);
+        }
+    }
+
+    /**
+     * Ограниченная куча лучших строк каталога. На вершине лежит худшая из отобранных строк.
+     */
+    private final class TopRows {
+
+        private final SmartphoneSortKey sortKey;
+
+        private final int limit;
+
+        /**
+         * Порядок ранжирования строк: по ключу сортировки, при равенстве - по порядку добавления в каталог.
+         */
+        private final Comparator<Integer> rowOrder;
+
+        private final PriorityQueue<Integer> heap;
+
+        TopRows(final SmartphoneSortKey sortKey, final int limit) {
+            this.sortKey = sortKey;
+            this.limit = limit;
+            this.rowOrder = Comparator.<Integer> comparingLong(row -> rank(sortKey, row))
+                    .thenComparing(Comparator.naturalOrder());
+            this.heap = new PriorityQueue<>(Math.min(limit, 1024) + 1, rowOrder.reversed());
+        }
+
+        void offer(final int row) {
+            if (heap.size() < limit) {
+                heap.add(row);
+            } else if (rowOrder.compare(row, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(row);
+            }
+        }
+
+        /**
+         * @return {@code true}, если куча заполнена и строка хуже всех отобранных по ключу сортировки
+         */
+        boolean isWorseThanAll(final int row) {
+            return heap.size() == limit && rank(sortKey, row) > rank(sortKey, heap.peek());
+        }
+
+        ArrayList<Smartphone> toList() {
+            final List<Integer> topRows = new ArrayList<>(heap);
+            topRows.sort(rowOrder);
+            final ArrayList<Smartphone> smartphones = new ArrayList<>(topRows.size());
+            topRows.forEach(row -> smartphones.add(smartphoneAt(row)));
+            return smartphones;
+        }
+    }
+
+    /**
+     * Диапазон {@code [from, to)} индекса атрибута.
+     */
+    private static final class Range {
+
+        private final SortedIndex index;
+
+        private final int from;
+
+        private final int to;
+
+        Range(final SortedIndex index, final int from, final int to) {
+            this.index = index;
+            this.from = from;
+            this.to = to;
+        }
+
+        int size() {
+            return to - from;
+        }
+    }
+
+    /**
+     * Строки раздела, упорядоченные по значению одного атрибута. Смартфоны без значения атрибута в индекс не попадают.
+     */
+    private static final class SortedIndex {
+
+        private final int[] rows;
+
+        private final long[] keys;
+
+        private SortedIndex(final int[] rows, final long[] keys) {
+            this.rows = rows;
+            this.keys = keys;
+        }
+
+        /**
+         * Устойчивая сортировка слиянием строк по ключам без упаковки в объекты.
+         *
+         * @param rows
+         *            строки каталога, переставляются вместе с ключами
+         * @param keys
+         *            ключи строк
+         */
+        static void sort(final int[] rows, final long[] keys) {
+            if (rows.length > INSERTION_SORT_THRESHOLD) {
+                sort(rows, keys, rows.clone(), keys.clone(), 0, rows.length);
+            } else {
+                insertionSort(rows, keys, 0, rows.length);
+            }
+        }
+
+        /**
+         * Сортировка {@code [from, to)}: половины сортируются в буферах и сливаются в исходные массивы.
+         */
+        private static void sort(final int[] rows,
+                final long[] keys,
+                final int[] bufferRows,
+                final long[] bufferKeys,
+                final int from,
+                final int to) {
+            if (to - from <= INSERTION_SORT_THRESHOLD) {
+                insertionSort(rows, keys, from, to);
+                return;
+            }
+            final int mid = (from + to) >>> 1;
+            // буферы совпадают с исходными массивами на [from, to), поэтому роли меняются на каждом уровне
+            sort(bufferRows, bufferKeys, rows, keys, from, mid);
+            sort(bufferRows, bufferKeys, rows, keys, mid, to);
+            int left = from;
+            int right = mid;
+            for (int i = from; i < to; i++) {
+                if (right >= to || left < mid && bufferKeys[left] <= bufferKeys[right]) {
+                    rows[i] = bufferRows[left];
+                    keys[i] = bufferKeys[left++];
+                } else {
+                    rows[i] = bufferRows[right];
+                    keys[i] = bufferKeys[right++];
+                }
+            }
+        }
+
+        private static void insertionSort(final int[] rows, final long[] keys, final int from, final int to) {
+            for (int i = from + 1; i < to; i++) {
+                final int row = rows[i];
+                final long key = keys[i];
+                int j = i - 1;
+                while (j >= from && keys[j] > key) {
+                    rows[j + 1] = rows[j];
+                    keys[j + 1] = keys[j];
+                    j--;
+                }
+                rows[j + 1] = row;
+                keys[j + 1] = key;
+            }
+        }
+
+        /**
+         * @return позиция первого ключа, не меньшего {@code key}
+         */
+        int lowerBound(final long key) {
+            int low = 0;
+            int high = keys.length;
+            while (low < high) {
+                final int mid = (low + high) >>> 1;
+                if (keys[mid] < key) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * @return позиция первого ключа, большего {@code key}
+         */
+        int upperBound(final long key) {
+            int low = 0;
+            int high = keys.length;
+            while (low < high) {
+                final int mid = (low + high) >>> 1;
+                if (keys[mid] <= key) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+}
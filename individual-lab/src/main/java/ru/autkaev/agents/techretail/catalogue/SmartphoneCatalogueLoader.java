@@ -0,0 +1,106 @@
+package ru.autkaev.agents.techretail.catalogue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.autkaev.agents.techretail.smartphone.Smartphone;
+import ru.autkaev.agents.techretail.smartphone.SmartphoneCodec;
+import ru.autkaev.agents.techretail.smartphone.SmartphoneFormat;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Массовая загрузка каталога из файла, отображенного в память.
+ * <p>
+ * Файл с расширением {@code .csv} содержит по смартфону на строку в формате {@link SmartphoneFormat}, пустые строки и
+ * строки, начинающиеся с {@code #}, пропускаются. Остальные файлы читаются как список в формате
+ * {@link SmartphoneCodec}.
+ *
+ * @author Anton Utkaev
+ * @since 2026.10.18
+ */
+public final class SmartphoneCatalogueLoader {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SmartphoneCatalogueLoader.class);
+
+    private SmartphoneCatalogueLoader() {
+    }
+
+    /**
+     * Чтение смартфонов из файла каталога за один проход.
+     *
+     * @param path
+     *            путь к файлу
+     * @return смартфоны в порядке следования в файле, строки CSV с ошибками пропускаются
+     * @throws IOException
+     *             если файл не удалось прочитать или бинарный каталог поврежден
+     */
+    public static List<Smartphone> load(final Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Catalogue file is too large: " + path);
+            }
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            final List<Smartphone> smartphones;
+            if (path.getFileName().toString().toLowerCase().endsWith(".csv")) {
+                smartphones = readCsv(buffer, path);
+            } else {
+                try {
+                    smartphones = SmartphoneCodec.decodeList(buffer);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Malformed binary catalogue " + path + ": " + e.getMessage(), e);
+                }
+            }
+            LOG.info("Loaded {} smartphones from {}", smartphones.size(), path);
+            return smartphones;
+        }
+    }
+
+    private static List<Smartphone> readCsv(final MappedByteBuffer buffer, final Path path) {
+        final List<Smartphone> smartphones = new ArrayList<>();
+        byte[] line = new byte[256];
+        int lineNumber = 0;
+        int skipped = 0;
+        String firstError = null;
+        while (buffer.hasRemaining()) {
+            int length = 0;
+            while (buffer.hasRemaining()) {
+                final byte next = buffer.get();
+                if (next == '\n') {
+                    break;
+                }
+                if (length == line.length) {
+                    line = Arrays.copyOf(line, length * 2);
+                }
+                line[length++] = next;
+            }
+            lineNumber++;
+            if (length > 0 && line[length - 1] == '\r') {
+                length--;
+            }
+            if (length == 0 || line[0] == '#') {
+                continue;
+            }
+            try {
+                final String text = new String(line, 0, length, StandardCharsets.UTF_8);
+                smartphones.add(SmartphoneFormat.parseCatalogueItem(text));
+            } catch (IllegalArgumentException e) {
+                if (firstError == null) {
+                    firstError = "line " + lineNumber + ": " + e.getMessage();
+                }
+                skipped++;
+            }
+        }
+        if (skipped > 0) {
+            LOG.warn("Skipped {} malformed lines in {}, first at {}", skipped, path, firstError);
+        }
+        return smartphones;
+    }
+}
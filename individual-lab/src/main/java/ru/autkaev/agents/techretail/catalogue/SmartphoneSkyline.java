@@ -0,0 +1,101 @@
+package ru.autkaev.agents.techretail.catalogue;
+
+import static ru.autkaev.agents.techretail.catalogue.SmartphoneCatalogue.sortableBits;
+
+import ru.autkaev.agents.techretail.smartphone.Smartphone;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.stream.IntStream;
+
+/**
+ * Отбор Парето-оптимальных смартфонов: остаются только те, которые ни один другой смартфон не превосходит
+ * одновременно по цене, памяти и частоте процессора.
+ * <p>
+ * Смартфоны просматриваются по возрастанию цены, а для уже просмотренных поддерживается "лестница" лучших пар (память,
+ * частота). Смартфон доминирован, если на лестнице есть ступень не хуже его по обоим атрибутам, поэтому отбор занимает
+ * {@code O(n log n)}. Незаданный атрибут считается худшим возможным значением.
+ *
+ * @author Anton Utkaev
+ * @since 2026.10.18
+ */
+public final class SmartphoneSkyline {
+
+    private SmartphoneSkyline() {
+    }
+
+    /**
+     * Получение Парето-оптимальных смартфонов.
+     *
+     * @param smartphones
+     *            подходящие под критерии смартфоны
+     * @return недоминируемые смартфоны в исходном порядке, полные дубликаты сохраняются
+     */
+    public static ArrayList<Smartphone> of(final List<Smartphone> smartphones) {
+        final int size = smartphones.size();
+        final long[] priceKeys = new long[size];
+        final long[] ramKeys = new long[size];
+        final long[] cpuKeys = new long[size];
+        for (int i = 0; i < size; i++) {
+            final Smartphone smartphone = smartphones.get(i);
+            priceKeys[i] = smartphone.getPrice() != null ? sortableBits(smartphone.getPrice()) : Long.MAX_VALUE;
+            ramKeys[i] = smartphone.getInstalledRam() != null ? smartphone.getInstalledRam() : Long.MIN_VALUE;
+            cpuKeys[i] = smartphone.getCpuSpeed() != null ? sortableBits(smartphone.getCpuSpeed()) : Long.MIN_VALUE;
+        }
+
+        // по возрастанию цены, при равной цене - от лучших по памяти и частоте, чтобы доминирующий шел раньше
+        final int[] order = IntStream.range(0, size)
+                .boxed()
+                .sorted(Comparator.<Integer> comparingLong(i -> priceKeys[i])
+                        .thenComparing(Comparator.<Integer> comparingLong(i -> ramKeys[i]).reversed())
+                        .thenComparing(Comparator.<Integer> comparingLong(i -> cpuKeys[i]).reversed()))
+                .mapToInt(Integer::intValue)
+                .toArray();
+
+        // ступени лестницы: с ростом памяти частота строго убывает
+        final NavigableMap<Long, Long> staircase = new TreeMap<>();
+        final boolean[] optimal = new boolean[size];
+        for (int position = 0; position < size; position++) {
+            final int current = order[position];
+            if (position > 0 && isSame(order[position - 1], current, priceKeys, ramKeys, cpuKeys)) {
+                // полный дубликат разделяет судьбу предыдущего
+                optimal[current] = optimal[order[position - 1]];
+                continue;
+            }
+            final Map.Entry<Long, Long> step = staircase.ceilingEntry(ramKeys[current]);
+            if (step != null && step.getValue() >= cpuKeys[current]) {
+                continue;
+            }
+            optimal[current] = true;
+            staircase.put(ramKeys[current], cpuKeys[current]);
+            final Iterator<Long> lowerSteps =
+                    staircase.headMap(ramKeys[current], false).descendingMap().values().iterator();
+            while (lowerSteps.hasNext() && lowerSteps.next() <= cpuKeys[current]) {
+                lowerSteps.remove();
+            }
+        }
+
+        final ArrayList<Smartphone> skyline = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            if (optimal[i]) {
+                skyline.add(smartphones.get(i));
+            }
+        }
+        return skyline;
+    }
+
+    private static boolean isSame(final int first,
+            final int second,
+            final long[] priceKeys,
+            final long[] ramKeys,
+            final long[] cpuKeys) {
+        return priceKeys[first] == priceKeys[second]
+                && ramKeys[first] == ramKeys[second]
+                && cpuKeys[first] == cpuKeys[second];
+    }
+}
@@ -1,32 +1,59 @@
 package ru.autkaev.agents.techretail.customer;
 
+import static ru.autkaev.agents.techretail.ServiceDescriptionType.CODEC_VERSION_PROPERTY;
+import static ru.autkaev.agents.techretail.ServiceDescriptionType.RESULT_LIMIT_PARAMETER;
+import static ru.autkaev.agents.techretail.ServiceDescriptionType.SKU_PARAMETER;
 import static ru.autkaev.agents.techretail.ServiceDescriptionType.SMARTPHONE_SELL;
 import static ru.autkaev.agents.techretail.ServiceDescriptionType.SMARTPHONE_SELL_CONVERSATION_ID;
+import static ru.autkaev.agents.techretail.ServiceDescriptionType.SMARTPHONE_WATCH_CONVERSATION_ID;
+import static ru.autkaev.agents.techretail.ServiceDescriptionType.SORT_KEY_PARAMETER;
 
 import jade.core.AID;
 import jade.core.Agent;
 import jade.core.behaviours.Behaviour;
+import jade.core.behaviours.CyclicBehaviour;
 import jade.core.behaviours.TickerBehaviour;
 import jade.domain.DFService;
 import jade.domain.FIPAException;
 import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.domain.FIPAAgentManagement.Property;
 import jade.domain.FIPAAgentManagement.ServiceDescription;
 import jade.lang.acl.ACLMessage;
 import jade.lang.acl.MessageTemplate;
+import jade.proto.SubscriptionInitiator;
+import org.apache.commons.lang3.SerializationException;
 import org.apache.commons.lang3.SerializationUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import ru.autkaev.agents.techretail.catalogue.CatalogueSummary;
 import ru.autkaev.agents.techretail.smartphone.Smartphone;
+import ru.autkaev.agents.techretail.smartphone.SmartphoneCodec;
+import ru.autkaev.agents.techretail.smartphone.SmartphoneFormat;
+import ru.autkaev.agents.techretail.smartphone.SmartphoneSortKey;
 
+import java.awt.GraphicsEnvironment;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Comparator;
-import java.util.List;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
 /**
  * Агент покупатель.
+ * <p>
+ * Каждому известному продавцу покупатель один раз отправляет постоянный запрос с критериями и начинает переговоры,
+ * когда продавец сообщает о подходящем смартфоне или его сводка каталога начинает допускать критерии. Периодически CFP
+ * рассылается, только пока не все продавцы подтвердили постоянный запрос, например, продавцам прежних версий, или
+ * после переговоров, сорванных перегрузкой или молчанием продавцов.
+ * <p>
+ * Продавцы прежних версий не объявляют в DF версию {@link SmartphoneCodec}: постоянный запрос им не отправляется, а
+ * CFP они получают в java-сериализации.
  *
  * @author Anton Utkaev
  * @since 2022.06.12
@@ -36,20 +63,100 @@ public class CustomerAgent extends Agent {
     private static final Logger LOG = LoggerFactory.getLogger(CustomerAgent.class);
 
     /**
-     * The list of known seller agents.
+     * How long sellers are waited for, in milliseconds.
      */
-    private final List<AID> sellerAgents = new ArrayList<>();
+    private static final long REPLY_TIMEOUT = 5000;
+
+    /**
+     * The set of known seller agents, kept up to date by the DF subscription.
+     */
+    private final Set<AID> sellerAgents = new LinkedHashSet<>();
+
+    /**
+     * Сводки каталогов, опубликованные продавцами в DF. Продавцам без сводки CFP отправляется всегда.
+     */
+    private final Map<AID, CatalogueSummary> sellerSummaries = new HashMap<>();
+
+    /**
+     * Продавцы, подтвердившие постоянный запрос.
+     */
+    private final Set<AID> watchingSellers = new HashSet<>();
+
+    /**
+     * Продавцы, объявившие в DF поддержку текущей версии {@link SmartphoneCodec}. Остальные - агенты прежних версий:
+     * они читают только java-сериализацию и не принимают постоянных запросов.
+     */
+    private final Set<AID> codecSellers = new HashSet<>();
+
+    /**
+     * Продавцы, сообщившие о подходящем смартфоне после последней рассылки CFP. Им CFP отправляется, даже если
+     * сводка каталога в DF еще не обновилась и исключает критерии.
+     */
+    private final Set<AID> notifyingSellers = new LinkedHashSet<>();
+
+    private SubscriptionInitiator sellerSubscription;
 
     private Smartphone wantedSmartphone;
 
     private CustomerAgentGui gui;
 
+    /**
+     * Получатель уведомлений о покупке: окно покупателя или, при запуске без окна, переданный в аргументах.
+     */
+    private CustomerEventSink eventSink = CustomerEventSink.NONE;
+
+    /**
+     * The reply-with of the message the running negotiation is waiting replies for.
+     */
+    private String activeReplyWith;
+
+    private boolean requestInProgress;
+
+    /**
+     * Продавец сообщил о подходящем смартфоне во время переговоров: если они закончатся без покупки, начать новые.
+     */
+    private boolean requestAgain;
+
+    /**
+     * Переговоры сорвались из-за перегрузки или молчания продавцов: таймер повторит их, даже если все продавцы
+     * подтвердили постоянный запрос.
+     */
+    private boolean retryOnTick;
+
+    /**
+     * Без аргументов запуска открывается окно для ввода критериев. Иначе агент работает без окна: первый аргумент -
+     * критерии в виде {@link Smartphone} или строки {@code name;ram;cpu;os;price}, второй необязательный -
+     * {@link CustomerEventSink}.
+     */
     @Override
     protected void setup() {
-        gui = new CustomerAgentGui(this);
-        gui.showGui();
         // Printout a welcome message
         LOG.info("Hello! Buyer-agent {} is ready.", getAID().getName());
+
+        final Object[] args = getArguments();
+        if (args != null && args.length > 0) {
+            if (args.length > 1 && args[1] instanceof CustomerEventSink) {
+                eventSink = (CustomerEventSink) args[1];
+            }
+            final Smartphone smartphone;
+            try {
+                smartphone = args[0] instanceof Smartphone
+                        ? (Smartphone) args[0]
+                        : SmartphoneFormat.parse(String.valueOf(args[0]));
+            } catch (IllegalArgumentException e) {
+                LOG.error("Invalid target smartphone: {}", e.getMessage());
+                doDelete();
+                return;
+            }
+            startBuying(smartphone);
+        } else if (GraphicsEnvironment.isHeadless()) {
+            LOG.info("No target specified and no display available");
+            doDelete();
+        } else {
+            gui = new CustomerAgentGui(this);
+            gui.showGui();
+            eventSink = gui;
+        }
     }
 
     public void startBuying(final Smartphone smartphone) {
@@ -62,44 +169,198 @@ public class CustomerAgent extends Agent {
 
         LOG.info("Target smartphone is {}", smartphone);
 
-        // Add a TickerBehaviour that schedules a request to seller agents every 10 sec
+        // Subscribe to the DF so that the set of sellers is updated incrementally instead of being polled
+        final DFAgentDescription agentDescription = new DFAgentDescription();
+        final ServiceDescription serviceDescription = new ServiceDescription();
+        serviceDescription.setType(SMARTPHONE_SELL);
+        agentDescription.addServices(serviceDescription);
+        sellerSubscription = new SubscriptionInitiator(this,
+                DFService.createSubscriptionMessage(this, getDefaultDF(), agentDescription, null)) {
+
+            @Override
+            protected void handleInform(final ACLMessage inform) {
+                updateSellerAgents(inform);
+            }
+        };
+        addBehaviour(sellerSubscription);
+        addBehaviour(new LateRepliesCleaner());
+        addBehaviour(new StockNotificationsServer());
+
+        // Add a TickerBehaviour that schedules a request to seller agents every 10 sec, unless all of them watch for us
+        // and the last request did not fail for lack of answers
         addBehaviour(new TickerBehaviour(this, 10000) {
 
             @Override
             protected void onTick() {
-                LOG.info("Trying to buy {}", smartphone);
-                // Update the list of seller agents
-                final DFAgentDescription agentDescription = new DFAgentDescription();
-                final ServiceDescription serviceDescription = new ServiceDescription();
-                serviceDescription.setType(SMARTPHONE_SELL);
-                agentDescription.addServices(serviceDescription);
-                final List<DFAgentDescription> searchResult = new ArrayList<>();
-                try {
-                    searchResult.addAll(Arrays.asList(DFService.search(myAgent, agentDescription)));
-                } catch (FIPAException fe) {
-                    LOG.error(fe.getMessage());
-                    fe.printStackTrace();
+                if (sellerAgents.isEmpty()) {
+                    LOG.info("No seller agents known yet");
+                    return;
                 }
-                searchResult.forEach(dfAgentDescription -> sellerAgents.add(dfAgentDescription.getName()));
-                LOG.info("Found the following seller agents: {}",
-                        sellerAgents.stream().map(AID::getName).collect(Collectors.joining(", ")));
+                if (requestInProgress || !retryOnTick && watchingSellers.containsAll(sellerAgents)) {
+                    return;
+                }
+                LOG.info("Trying to buy {}", smartphone);
 
                 // Perform the request
-                myAgent.addBehaviour(new CustomerAgent.RequestPerformer());
+                startRequest();
             }
         });
     }
 
+    private void startRequest() {
+        requestInProgress = true;
+        requestAgain = false;
+        retryOnTick = false;
+        addBehaviour(new CustomerAgent.RequestPerformer());
+    }
+
+    /**
+     * Регистрация постоянного запроса у продавца.
+     */
+    private void subscribe(final AID seller) {
+        final ACLMessage subscription = new ACLMessage(ACLMessage.SUBSCRIBE);
+        subscription.addReceiver(seller);
+        subscription.setConversationId(SMARTPHONE_WATCH_CONVERSATION_ID);
+        subscription.setByteSequenceContent(SmartphoneCodec.encode(wantedSmartphone));
+        send(subscription);
+    }
+
+    /**
+     * Обновление множества продавцов и их сводок по уведомлению DF. Продавец без услуги продажи смартфонов в
+     * уведомлении снял регистрацию или сменил услугу. Как только становится известен первый продавец, покупка
+     * начинается сразу, не дожидаясь срабатывания таймера. Так же покупка начинается, когда сводка продавца,
+     * подтвердившего постоянный запрос, перестает исключать критерии: уведомление о смартфоне могло прийти, пока CFP
+     * этому продавцу не отправлялся.
+     *
+     * @param inform
+     *            уведомление по подписке
+     */
+    private void updateSellerAgents(final ACLMessage inform) {
+        final boolean noSellersKnown = sellerAgents.isEmpty();
+        boolean summaryAdmitsCriteria = false;
+        try {
+            for (final DFAgentDescription description : DFService.decodeNotification(inform.getContent())) {
+                final ServiceDescription service = findService(description, SMARTPHONE_SELL);
+                if (service != null) {
+                    sellerAgents.add(description.getName());
+                    if (!supportsCodec(service)) {
+                        codecSellers.remove(description.getName());
+                    } else if (codecSellers.add(description.getName())) {
+                        subscribe(description.getName());
+                    }
+                    final CatalogueSummary summary = summaryOf(service);
+                    final CatalogueSummary previousSummary = sellerSummaries.put(description.getName(), summary);
+                    summaryAdmitsCriteria |= watchingSellers.contains(description.getName())
+                            && previousSummary != null
+                            && !previousSummary.mayMatch(wantedSmartphone)
+                            && (summary == null || summary.mayMatch(wantedSmartphone));
+                } else {
+                    sellerAgents.remove(description.getName());
+                    sellerSummaries.remove(description.getName());
+                    codecSellers.remove(description.getName());
+                    watchingSellers.remove(description.getName());
+                    notifyingSellers.remove(description.getName());
+                }
+            }
+        } catch (FIPAException fe) {
+            LOG.error(fe.getMessage());
+            fe.printStackTrace();
+        }
+        LOG.info("Known seller agents: {}", sellerAgents.stream().map(AID::getName).collect(Collectors.joining(", ")));
+        if (summaryAdmitsCriteria && requestInProgress) {
+            requestAgain = true;
+        } else if ((noSellersKnown || summaryAdmitsCriteria) && !sellerAgents.isEmpty() && !requestInProgress) {
+            LOG.info("Trying to buy {}", wantedSmartphone);
+            startRequest();
+        }
+    }
+
+    private static ServiceDescription findService(final DFAgentDescription description, final String type) {
+        final Iterator<?> services = description.getAllServices();
+        while (services.hasNext()) {
+            final ServiceDescription service = (ServiceDescription) services.next();
+            if (type.equals(service.getType())) {
+                return service;
+            }
+        }
+        return null;
+    }
+
+    private static Map<String, String> propertiesOf(final ServiceDescription service) {
+        final Map<String, String> properties = new HashMap<>();
+        final Iterator<?> iterator = service.getAllProperties();
+        while (iterator.hasNext()) {
+            final Property property = (Property) iterator.next();
+            properties.put(property.getName(), String.valueOf(property.getValue()));
+        }
+        return properties;
+    }
+
+    /**
+     * @return {@code true}, если продавец читает критерии в текущей версии {@link SmartphoneCodec}
+     */
+    private static boolean supportsCodec(final ServiceDescription service) {
+        final String version = propertiesOf(service).get(CODEC_VERSION_PROPERTY);
+        try {
+            return version != null && Byte.parseByte(version) >= SmartphoneCodec.VERSION;
+        } catch (NumberFormatException e) {
+            LOG.warn("Ignoring the codec version of {}: {}", service.getName(), version);
+            return false;
+        }
+    }
+
+    /**
+     * @return сводка каталога из описания услуги или {@code null}, если продавец ее не публикует
+     */
+    private static CatalogueSummary summaryOf(final ServiceDescription service) {
+        try {
+            return CatalogueSummary.fromProperties(propertiesOf(service));
+        } catch (IllegalArgumentException e) {
+            LOG.warn("Ignoring the catalogue summary of {}: {}", service.getName(), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return продавцы, у которых по сводкам каталогов могут быть подходящие смартфоны
+     */
+    private Set<AID> sellersFor(final Smartphone criteria) {
+        final Set<AID> sellers = new LinkedHashSet<>();
+        for (final AID seller : sellerAgents) {
+            final CatalogueSummary summary = sellerSummaries.get(seller);
+            if (summary == null || summary.mayMatch(criteria)) {
+                sellers.add(seller);
+            }
+        }
+        return sellers;
+    }
+
     @Override
     protected void takeDown() {
+        if (sellerSubscription != null) {
+            sellerSubscription.cancel(getDefaultDF(), true);
+        }
+        if (!watchingSellers.isEmpty()) {
+            final ACLMessage cancel = new ACLMessage(ACLMessage.CANCEL);
+            watchingSellers.forEach(cancel::addReceiver);
+            cancel.setConversationId(SMARTPHONE_WATCH_CONVERSATION_ID);
+            send(cancel);
+        }
         // Printout a dismissal message
-        gui.dispose();
+        if (gui != null) {
+            gui.dispose();
+        }
         LOG.info("Buyer-agent {} terminating.", getAID().getName());
     }
 
     /**
      * Inner class RequestPerformer. This is the behaviour used by Book-buyer agents to request seller agents the target
      * book.
+     * <p>
+     * The CFP goes only to the sellers whose catalogue summaries do not rule out the wanted smartphone, and to the
+     * sellers that have just notified about it. Proposals are collected until every seller has answered or the reply-by
+     * deadline expires, then the best offer received so far is accepted. Sellers that did not answer in time are not
+     * waited for, but the request is repeated on the next tick, as it is when a seller refuses as overloaded.
      */
     private class RequestPerformer extends Behaviour {
 
@@ -107,58 +368,76 @@ public class CustomerAgent extends Agent {
 
         private Smartphone bestSmartphone; // The best offered price
 
-        private int step = 0;
+        private final Set<AID> pendingSellers = new HashSet<>(); // Sellers that have not replied yet
 
-        public void action() {
+        private MessageTemplate messageTemplate; // The template to receive replies
 
-            int repliesCnt = 0; // The counter of replies from seller agents
+        private long deadline; // The moment after which replies are no longer awaited
 
-            MessageTemplate messageTemplate = null; // The template to receive replies
+        private int step = 0;
 
+        public void action() {
             switch (step) {
                 case 0:
                     // Send the aclMessage to all sellers
-                    final ACLMessage aclMessage = new ACLMessage(ACLMessage.CFP);
-                    sellerAgents.forEach(aclMessage::addReceiver);
+                    final Set<AID> sellers = sellersFor(wantedSmartphone);
+                    // сводка в DF обновляется с задержкой и может еще исключать новый смартфон
+                    sellers.addAll(notifyingSellers);
+                    notifyingSellers.clear();
+                    if (sellers.isEmpty()) {
+                        LOG.info("No seller may have {}", wantedSmartphone);
+                        step = 2;
+                        break;
+                    }
+                    final String replyWith = "aclMessage " + UUID.randomUUID().toString().substring(0, 4);
+                    deadline = System.currentTimeMillis() + REPLY_TIMEOUT;
+                    final ACLMessage aclMessage = createCfp(replyWith);
+                    final ACLMessage legacyMessage = createCfp(replyWith);
+                    for (final AID seller : sellers) {
+                        (codecSellers.contains(seller) ? aclMessage : legacyMessage).addReceiver(seller);
+                    }
+                    pendingSellers.addAll(sellers);
 
-                    aclMessage.setByteSequenceContent(SerializationUtils.serialize(wantedSmartphone));
-                    aclMessage.setConversationId(SMARTPHONE_SELL_CONVERSATION_ID);
-                    aclMessage.setReplyWith("aclMessage " + UUID.randomUUID().toString().substring(0, 4));
-                    myAgent.send(aclMessage);
+                    aclMessage.setByteSequenceContent(SmartphoneCodec.encode(wantedSmartphone));
+                    // продавцы прежних версий читают только java-сериализацию
+                    legacyMessage.setByteSequenceContent(SerializationUtils.serialize(wantedSmartphone));
+                    activeReplyWith = replyWith;
+                    if (sellers.stream().anyMatch(codecSellers::contains)) {
+                        myAgent.send(aclMessage);
+                    }
+                    if (!codecSellers.containsAll(sellers)) {
+                        myAgent.send(legacyMessage);
+                    }
 
                     // Prepare the template to get proposals
                     messageTemplate =
                             MessageTemplate.and(MessageTemplate.MatchConversationId(SMARTPHONE_SELL_CONVERSATION_ID),
-                                    MessageTemplate.MatchInReplyTo(aclMessage.getReplyWith()));
+                                    MessageTemplate.MatchInReplyTo(replyWith));
                     step = 1;
                     break;
                 case 1:
                     // Receive all proposals/refusals from seller agents
                     ACLMessage reply = myAgent.receive(messageTemplate);
                     if (reply != null) {
-                        // Reply received
-                        if (Integer.valueOf(ACLMessage.PROPOSE).equals(reply.getPerformative())) {
-                            // This is an offer
-                            final ArrayList<Smartphone> smartphones =
-                                    SerializationUtils.deserialize(reply.getByteSequenceContent());
-                            // самый дешевый из подходящих
-                            final Smartphone cheapestSmartphone =
-                                    smartphones.stream().min(Comparator.comparing(Smartphone::getPrice)).orElse(null);
-                            if (bestSeller == null
-                                    || bestSmartphone == null
-                                    || cheapestSmartphone.getPrice().compareTo(bestSmartphone.getPrice()) < 0) {
-                                // This is the best offer at present
-                                bestSmartphone = cheapestSmartphone;
-                                bestSeller = reply.getSender();
+                        // Reply received, duplicates and replies from unknown agents are ignored
+                        if (pendingSellers.remove(reply.getSender())) {
+                            if (Integer.valueOf(ACLMessage.PROPOSE).equals(reply.getPerformative())) {
+                                // This is an offer
+                                handleProposal(reply);
+                            } else if (Integer.valueOf(ACLMessage.REFUSE).equals(reply.getPerformative())
+                                    && "overloaded".equals(reply.getContent())) {
+                                // у продавца могут быть подходящие смартфоны, он просто не разобрал CFP
+                                retryOnTick = true;
                             }
                         }
-                        repliesCnt++;
-                        if (repliesCnt >= sellerAgents.size()) {
+                        if (pendingSellers.isEmpty()) {
                             // We received all replies
                             step = 2;
                         }
-                    } else {
-                        block();
+                    } else if (!awaitUntilDeadline()) {
+                        LOG.info("Reply deadline expired, {} seller(s) did not answer", pendingSellers.size());
+                        retryOnTick = true;
+                        step = 2;
                     }
                     break;
                 case 2:
@@ -166,8 +445,14 @@ public class CustomerAgent extends Agent {
                     final ACLMessage order = new ACLMessage(ACLMessage.ACCEPT_PROPOSAL);
                     order.addReceiver(bestSeller);
                     order.setContent(bestSmartphone.getName());
+                    if (bestSmartphone.getSku() != null) {
+                        order.addUserDefinedParameter(SKU_PARAMETER, bestSmartphone.getSku());
+                    }
                     order.setConversationId(SMARTPHONE_SELL_CONVERSATION_ID);
                     order.setReplyWith("aclMessage " + UUID.randomUUID().toString().substring(0, 4));
+                    deadline = System.currentTimeMillis() + REPLY_TIMEOUT;
+                    order.setReplyByDate(new Date(deadline));
+                    activeReplyWith = order.getReplyWith();
                     myAgent.send(order);
 
                     // Prepare the template to get the purchase order reply
@@ -188,19 +473,72 @@ public class CustomerAgent extends Agent {
                                     bestSmartphone.getName(),
                                     reply.getSender().getName(),
                                     bestSmartphone.getPrice());
-                            gui.showDoneDialog(bestSmartphone, reply.getSender());
+                            eventSink.purchaseCompleted(bestSmartphone, reply.getSender());
+                            requestAgain = false;
                             myAgent.doDelete();
                         } else {
                             LOG.info("Attempt failed: requested book already sold.");
+                            // другие продавцы могли не успеть продать подходящие смартфоны
+                            requestAgain = true;
                         }
                         step = 4;
-                    } else {
-                        block();
+                    } else if (!awaitUntilDeadline()) {
+                        LOG.info("Attempt failed: seller {} did not confirm the purchase in time",
+                                bestSeller.getName());
+                        retryOnTick = true;
+                        step = 4;
                     }
                     break;
             }
         }
 
+        /**
+         * @return CFP без получателей и содержимого
+         */
+        private ACLMessage createCfp(final String replyWith) {
+            final ACLMessage aclMessage = new ACLMessage(ACLMessage.CFP);
+            // нужен только самый дешевый подходящий смартфон
+            aclMessage.addUserDefinedParameter(SORT_KEY_PARAMETER, SmartphoneSortKey.PRICE.name());
+            aclMessage.addUserDefinedParameter(RESULT_LIMIT_PARAMETER, "1");
+            aclMessage.setConversationId(SMARTPHONE_SELL_CONVERSATION_ID);
+            aclMessage.setReplyWith(replyWith);
+            aclMessage.setReplyByDate(new Date(deadline));
+            return aclMessage;
+        }
+
+        private void handleProposal(final ACLMessage reply) {
+            final ArrayList<Smartphone> smartphones;
+            try {
+                smartphones = SmartphoneCodec.decodeList(reply.getByteSequenceContent());
+            } catch (IllegalArgumentException | SerializationException e) {
+                LOG.warn("Malformed proposal from {}: {}", reply.getSender().getName(), e.getMessage());
+                return;
+            }
+            // самый дешевый из подходящих, продавцы прежних версий присылают все совпадения
+            final Smartphone cheapestSmartphone =
+                    smartphones.stream().min(Comparator.comparing(Smartphone::getPrice)).orElse(null);
+            if (cheapestSmartphone != null && (bestSmartphone == null
+                    || cheapestSmartphone.getPrice().compareTo(bestSmartphone.getPrice()) < 0)) {
+                // This is the best offer at present
+                bestSmartphone = cheapestSmartphone;
+                bestSeller = reply.getSender();
+            }
+        }
+
+        /**
+         * Block until a new message arrives or the deadline expires.
+         *
+         * @return {@code false} if the deadline has already expired
+         */
+        private boolean awaitUntilDeadline() {
+            final long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            block(remaining);
+            return true;
+        }
+
         @Override
         public boolean done() {
             if (this.step == 2 && this.bestSeller == null) {
@@ -208,5 +546,71 @@ public class CustomerAgent extends Agent {
             }
             return ((step == 2 && bestSeller == null) || step == 4);
         }
+
+        @Override
+        public int onEnd() {
+            activeReplyWith = null;
+            requestInProgress = false;
+            if (requestAgain) {
+                LOG.info("Trying to buy {} again", wantedSmartphone);
+                startRequest();
+            }
+            return super.onEnd();
+        }
+    }
+
+    /**
+     * Прием ответов продавцов на постоянный запрос. Уведомление о подходящем смартфоне запускает переговоры, а если они
+     * уже идут - повторные переговоры после них, если эти закончатся без покупки.
+     */
+    private class StockNotificationsServer extends CyclicBehaviour {
+
+        private final MessageTemplate messageTemplate =
+                MessageTemplate.MatchConversationId(SMARTPHONE_WATCH_CONVERSATION_ID);
+
+        @Override
+        public void action() {
+            ACLMessage message;
+            while ((message = myAgent.receive(messageTemplate)) != null) {
+                final AID seller = message.getSender();
+                if (Integer.valueOf(ACLMessage.AGREE).equals(message.getPerformative())) {
+                    if (sellerAgents.contains(seller)) {
+                        watchingSellers.add(seller);
+                    }
+                } else if (Integer.valueOf(ACLMessage.INFORM).equals(message.getPerformative())) {
+                    LOG.info("Seller {} has new smartphones matching {}", seller.getName(), wantedSmartphone);
+                    notifyingSellers.add(seller);
+                    if (requestInProgress) {
+                        requestAgain = true;
+                    } else {
+                        startRequest();
+                    }
+                } else {
+                    LOG.warn("Seller {} did not accept the standing query: {}", seller.getName(), message.getContent());
+                }
+            }
+            block();
+        }
+    }
+
+    /**
+     * Inner class LateRepliesCleaner. Replies of this conversation that do not belong to the running negotiation
+     * arrived after its deadline; they are dropped so that they do not pile up in the mailbox.
+     */
+    private class LateRepliesCleaner extends CyclicBehaviour {
+
+        private final MessageTemplate messageTemplate = new MessageTemplate(
+                (MessageTemplate.MatchExpression) message -> SMARTPHONE_SELL_CONVERSATION_ID
+                        .equals(message.getConversationId())
+                        && (activeReplyWith == null || !activeReplyWith.equals(message.getInReplyTo())));
+
+        @Override
+        public void action() {
+            ACLMessage lateReply;
+            while ((lateReply = myAgent.receive(messageTemplate)) != null) {
+                LOG.debug("Dropping late reply from {}", lateReply.getSender().getName());
+            }
+            block();
+        }
     }
 }
@@ -22,6 +22,7 @@ import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JProgressBar;
 import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
 
 /**
  * Окно для работы с покупателем.
@@ -29,7 +30,7 @@ import javax.swing.JTextField;
  * @author Anton Utkaev
  * @since 2022.06.12
  */
-public class CustomerAgentGui extends JFrame {
+public class CustomerAgentGui extends JFrame implements CustomerEventSink {
 
     private static final Logger LOG = LoggerFactory.getLogger(TechRetailerAgentGui.class);
 
@@ -88,6 +89,14 @@ public class CustomerAgentGui extends JFrame {
         });
     }
 
+    /**
+     * Показ окна об успешной продаже в потоке Swing, не задерживая поток агента.
+     */
+    @Override
+    public void purchaseCompleted(final Smartphone smartphone, final AID seller) {
+        SwingUtilities.invokeLater(() -> showDoneDialog(smartphone, seller));
+    }
+
     /**
      * Показ окна с информацией об успешной продаже.
      * 
@@ -0,0 +1,33 @@
+package ru.autkaev.agents.techretail.customer;
+
+import jade.core.AID;
+import ru.autkaev.agents.techretail.smartphone.Smartphone;
+
+/**
+ * Получатель уведомлений о ходе покупки.
+ * <p>
+ * Методы вызываются из потока агента, поэтому реализация не должна блокироваться: окно покупателя передает
+ * уведомление в поток Swing, а при запуске без окна уведомления можно отдать тестовому стенду или не обрабатывать
+ * вовсе.
+ *
+ * @author Anton Utkaev
+ * @since 2026.10.18
+ */
+public interface CustomerEventSink {
+
+    /**
+     * Получатель, игнорирующий все уведомления.
+     */
+    CustomerEventSink NONE = (smartphone, seller) -> {
+    };
+
+    /**
+     * Покупка успешно завершена.
+     *
+     * @param smartphone
+     *            купленный смартфон
+     * @param seller
+     *            продавец
+     */
+    void purchaseCompleted(Smartphone smartphone, AID seller);
+}
@@ -0,0 +1,107 @@
+package ru.autkaev.agents.techretail.retailer;
+
+import ru.autkaev.agents.techretail.smartphone.Smartphone;
+import ru.autkaev.agents.techretail.smartphone.SmartphoneSortKey;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Кэш готовых ответов на CFP с вытеснением давно не запрошенных.
+ * <p>
+ * Ключ - нормализованные критерии покупателя вместе с параметрами ответа, значение - закодированный список смартфонов
+ * для PROPOSE. Кэш привязан к версии каталога и очищается целиком, как только версия меняется.
+ *
+ * @author Anton Utkaev
+ * @since 2026.10.18
+ */
+final class OfferCache {
+
+    /**
+     * Значение для критериев, под которые в каталоге ничего нет.
+     */
+    static final byte[] NO_OFFER = new byte[0];
+
+    private final Map<List<Object>, byte[]> offers;
+
+    /**
+     * Версия каталога, для которой сохранены ответы.
+     */
+    private long catalogueVersion = -1;
+
+    private long hits;
+
+    private long misses;
+
+    /**
+     * @param capacity
+     *            максимальное количество ответов в кэше
+     */
+    OfferCache(final int capacity) {
+        this.offers = new LinkedHashMap<List<Object>, byte[]>(16, 0.75f, true) {
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<List<Object>, byte[]> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Ключ кэша. Наименование приводится к нижнему регистру, как при подборе, чтобы запросы, различающиеся только
+     * регистром, попадали в один ответ.
+     *
+     * @param encoding
+     *            версия {@link ru.autkaev.agents.techretail.smartphone.SmartphoneCodec} ответа, {@code 0} для
+     *            сериализации Java
+     */
+    static List<Object> keyOf(final Smartphone criteria,
+            final SmartphoneSortKey sortKey,
+            final int limit,
+            final boolean skyline,
+            final int encoding) {
+        return Arrays.asList(criteria.getName() != null ? criteria.getName().toLowerCase() : null,
+                criteria.getInstalledRam(),
+                criteria.getCpuSpeed(),
+                criteria.getSmartphoneOs(),
+                criteria.getPrice(),
+                sortKey,
+                limit,
+                skyline,
+                encoding);
+    }
+
+    /**
+     * @param version
+     *            текущая версия каталога
+     * @return сохраненный ответ, {@link #NO_OFFER} или {@code null}, если ответа в кэше нет
+     */
+    byte[] get(final List<Object> key, final long version) {
+        if (version != catalogueVersion) {
+            offers.clear();
+            catalogueVersion = version;
+        }
+        final byte[] offer = offers.get(key);
+        if (offer != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return offer;
+    }
+
+    /**
+     * Сохранение ответа, полученного для текущей версии каталога, то есть после {@link #get(List, long)} с той же
+     * версией.
+     */
+    void put(final List<Object> key, final byte[] offer) {
+        offers.put(key, offer);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("[size: %s], [hits: %s], [misses: %s]", offers.size(), hits, misses);
+    }
+}
@@ -0,0 +1,174 @@
+package ru.autkaev.agents.techretail.retailer;
+
+import ru.autkaev.agents.techretail.smartphone.Smartphone;
+import ru.autkaev.agents.techretail.smartphone.SmartphoneOs;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Постоянные запросы покупателей с обратным индексом критериев: по новому смартфону находятся запросы, которым он
+ * подходит, без перебора всех запросов.
+ * <p>
+ * Запросы разложены по ОС из критериев, а внутри ОС - по наибольшей цене в {@link TreeMap}, поэтому смартфон
+ * проверяется только на запросах своей ОС и с ценой не ниже его собственной. Память, частота и наименование
+ * проверяются уже на этих кандидатах. Критерии проверяются так же, как при подборе по каталогу: незаданное поле
+ * критериев не ограничивает выборку, а смартфон без атрибута не подходит под заданный критерий.
+ *
+ * @param <K>
+ *            ключ запроса, например, подписчик
+ * @author Anton Utkaev
+ * @since 2026.10.18
+ */
+final class StandingQueries<K> {
+
+    private final Map<K, Query<K>> queries = new HashMap<>();
+
+    private final Map<SmartphoneOs, Bucket<K>> bucketsByOs = new EnumMap<>(SmartphoneOs.class);
+
+    /**
+     * Запросы без ОС в критериях.
+     */
+    private final Bucket<K> anyOsBucket = new Bucket<>();
+
+    /**
+     * Регистрация запроса. Прежний запрос с тем же ключом заменяется.
+     */
+    void put(final K key, final Smartphone criteria) {
+        remove(key);
+        final Query<K> query = new Query<>(key, criteria);
+        queries.put(key, query);
+        bucketOf(criteria.getSmartphoneOs()).add(query);
+    }
+
+    /**
+     * @return {@code true}, если запрос с этим ключом был зарегистрирован
+     */
+    boolean remove(final K key) {
+        final Query<K> query = queries.remove(key);
+        if (query == null) {
+            return false;
+        }
+        bucketOf(query.criteria.getSmartphoneOs()).remove(query);
+        return true;
+    }
+
+    /**
+     * @return ключи запросов, под критерии которых подходит смартфон, в порядке регистрации внутри раздела
+     */
+    Set<K> matching(final Smartphone smartphone) {
+        final Set<K> keys = new LinkedHashSet<>();
+        anyOsBucket.collect(smartphone, keys);
+        if (smartphone.getSmartphoneOs() != null) {
+            final Bucket<K> bucket = bucketsByOs.get(smartphone.getSmartphoneOs());
+            if (bucket != null) {
+                bucket.collect(smartphone, keys);
+            }
+        }
+        return keys;
+    }
+
+    boolean isEmpty() {
+        return queries.isEmpty();
+    }
+
+    int size() {
+        return queries.size();
+    }
+
+    private Bucket<K> bucketOf(final SmartphoneOs smartphoneOs) {
+        return smartphoneOs != null ? bucketsByOs.computeIfAbsent(smartphoneOs, os -> new Bucket<>()) : anyOsBucket;
+    }
+
+    /**
+     * Запросы одной ОС.
+     */
+    private static final class Bucket<K> {
+
+        /**
+         * Запросы с ценой в критериях по наибольшей цене.
+         */
+        private final TreeMap<Double, Set<Query<K>>> byMaxPrice = new TreeMap<>();
+
+        /**
+         * Запросы без цены в критериях.
+         */
+        private final Set<Query<K>> anyPrice = new LinkedHashSet<>();
+
+        void add(final Query<K> query) {
+            final Double maxPrice = query.criteria.getPrice();
+            if (maxPrice != null) {
+                byMaxPrice.computeIfAbsent(maxPrice, price -> new LinkedHashSet<>()).add(query);
+            } else {
+                anyPrice.add(query);
+            }
+        }
+
+        void remove(final Query<K> query) {
+            final Double maxPrice = query.criteria.getPrice();
+            if (maxPrice == null) {
+                anyPrice.remove(query);
+                return;
+            }
+            final Set<Query<K>> samePrice = byMaxPrice.get(maxPrice);
+            if (samePrice != null && samePrice.remove(query) && samePrice.isEmpty()) {
+                byMaxPrice.remove(maxPrice);
+            }
+        }
+
+        void collect(final Smartphone smartphone, final Set<K> keys) {
+            collect(anyPrice, smartphone, keys);
+            if (smartphone.getPrice() != null) {
+                for (final Set<Query<K>> samePrice : byMaxPrice.tailMap(smartphone.getPrice(), true).values()) {
+                    collect(samePrice, smartphone, keys);
+                }
+            }
+        }
+
+        private static <K> void collect(final Collection<Query<K>> candidates,
+                final Smartphone smartphone,
+                final Set<K> keys) {
+            for (final Query<K> query : candidates) {
+                if (query.matchesRest(smartphone)) {
+                    keys.add(query.key);
+                }
+            }
+        }
+    }
+
+    private static final class Query<K> {
+
+        private final K key;
+
+        private final Smartphone criteria;
+
+        private final String lowerCaseName;
+
+        Query(final K key, final Smartphone criteria) {
+            this.key = key;
+            this.criteria = criteria;
+            this.lowerCaseName = criteria.getName() != null ? criteria.getName().toLowerCase() : null;
+        }
+
+        /**
+         * Проверка критериев, кроме ОС и цены, по которым запрос уже найден в индексе.
+         */
+        boolean matchesRest(final Smartphone smartphone) {
+            if (criteria.getInstalledRam() != null && (smartphone.getInstalledRam() == null
+                    || smartphone.getInstalledRam() < criteria.getInstalledRam())) {
+                return false;
+            }
+            if (criteria.getCpuSpeed() != null && (smartphone.getCpuSpeed() == null
+                    || Double.compare(smartphone.getCpuSpeed(), criteria.getCpuSpeed()) < 0)) {
+                return false;
+            }
+            return lowerCaseName == null
+                    || smartphone.getName() != null && smartphone.getName().toLowerCase().contains(lowerCaseName);
+        }
+    }
+}
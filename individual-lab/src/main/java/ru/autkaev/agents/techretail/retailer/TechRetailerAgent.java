@@ -1,28 +1,63 @@
 package ru.autkaev.agents.techretail.retailer;
 
+import static ru.autkaev.agents.techretail.ServiceDescriptionType.CODEC_VERSION_PROPERTY;
+import static ru.autkaev.agents.techretail.ServiceDescriptionType.REPLY_MODE_PARAMETER;
+import static ru.autkaev.agents.techretail.ServiceDescriptionType.RESULT_LIMIT_PARAMETER;
+import static ru.autkaev.agents.techretail.ServiceDescriptionType.SKU_PARAMETER;
+import static ru.autkaev.agents.techretail.ServiceDescriptionType.SKYLINE_REPLY_MODE;
 import static ru.autkaev.agents.techretail.ServiceDescriptionType.SMARTPHONE_SELL;
+import static ru.autkaev.agents.techretail.ServiceDescriptionType.SMARTPHONE_WATCH_CONVERSATION_ID;
+import static ru.autkaev.agents.techretail.ServiceDescriptionType.SORT_KEY_PARAMETER;
 
+import jade.core.AID;
 import jade.core.Agent;
-import jade.core.behaviours.CyclicBehaviour;
+import jade.core.behaviours.OneShotBehaviour;
 import jade.core.behaviours.TickerBehaviour;
 import jade.domain.DFService;
 import jade.domain.FIPAException;
 import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.domain.FIPAAgentManagement.Property;
 import jade.domain.FIPAAgentManagement.ServiceDescription;
 import jade.lang.acl.ACLMessage;
-import jade.lang.acl.MessageTemplate;
+import org.apache.commons.lang3.SerializationException;
 import org.apache.commons.lang3.SerializationUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import ru.autkaev.agents.techretail.MessageDispatcher;
+import ru.autkaev.agents.techretail.catalogue.CatalogueSummary;
+import ru.autkaev.agents.techretail.catalogue.SmartphoneCatalogue;
+import ru.autkaev.agents.techretail.catalogue.SmartphoneCatalogueLoader;
+import ru.autkaev.agents.techretail.catalogue.SmartphoneSkyline;
 import ru.autkaev.agents.techretail.smartphone.Smartphone;
-
+import ru.autkaev.agents.techretail.smartphone.SmartphoneCodec;
+import ru.autkaev.agents.techretail.smartphone.SmartphoneFormat;
+import ru.autkaev.agents.techretail.smartphone.SmartphoneSortKey;
+
+import java.awt.GraphicsEnvironment;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
  * Агент продавец.
+ * <p>
+ * Каталог читается и меняется только в потоке агента: изменения из других потоков, например, из окна продавца,
+ * передаются агенту поведениями, поэтому подбор смартфонов не блокируется и не видит каталог в промежуточном
+ * состоянии.
+ * <p>
+ * Покупатель может зарегистрировать постоянный запрос (см.
+ * {@link ru.autkaev.agents.techretail.ServiceDescriptionType#SMARTPHONE_WATCH_CONVERSATION_ID}), и тогда продавец сам
+ * сообщит ему о поступлении подходящих смартфонов, вместо того чтобы покупатель периодически рассылал CFP.
  *
  * @author Anton Utkaev
  * @since 2022.06.12
@@ -31,33 +66,138 @@ public class TechRetailerAgent extends Agent {
 
     private static final Logger LOG = LoggerFactory.getLogger(TechRetailerAgent.class);
 
-    private final List<Smartphone> smartphoneList = new ArrayList<>();
+    /**
+     * Префикс аргумента запуска с путем к файлу каталога для массовой загрузки.
+     */
+    public static final String CATALOGUE_FILE_ARGUMENT = "catalogue=";
+
+    /**
+     * Префикс аргумента запуска с количеством сообщений, которое диспетчер разбирает за один вызов.
+     */
+    public static final String BATCH_SIZE_ARGUMENT = "batch-size=";
+
+    /**
+     * Количество сообщений за один вызов диспетчера по умолчанию.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 32;
+
+    /**
+     * Префикс аргумента запуска с количеством ожидающих сообщений, сверх которого новые CFP отклоняются без разбора.
+     */
+    public static final String MAX_BACKLOG_ARGUMENT = "max-backlog=";
+
+    /**
+     * Предельное количество ожидающих сообщений по умолчанию.
+     */
+    public static final int DEFAULT_MAX_BACKLOG = 1000;
+
+    /**
+     * Префикс аргумента запуска с количеством готовых ответов на CFP, которые хранит продавец.
+     */
+    public static final String OFFER_CACHE_SIZE_ARGUMENT = "offer-cache-size=";
+
+    /**
+     * Количество готовых ответов на CFP по умолчанию.
+     */
+    public static final int DEFAULT_OFFER_CACHE_SIZE = 1024;
+
+    /**
+     * Префикс аргумента запуска, включающего совместную обработку одинаковых CFP из очереди.
+     */
+    public static final String COALESCE_CFP_ARGUMENT = "coalesce-cfp=";
+
+    /**
+     * Наименьший интервал между обновлениями сводки каталога в DF, мс.
+     */
+    private static final long SUMMARY_REFRESH_PERIOD = 2000;
+
+    private final SmartphoneCatalogue smartphoneList = new SmartphoneCatalogue();
 
     private TechRetailerAgentGui gui;
 
+    /**
+     * Сколько сообщений из очереди диспетчер обрабатывает за один вызов, прежде чем уступить планировщику.
+     */
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    /**
+     * Сколько сообщений может ожидать обработки, прежде чем продавец начнет отвечать на CFP отказом "overloaded".
+     */
+    private int maxBacklog = DEFAULT_MAX_BACKLOG;
+
+    /**
+     * Разбирать все ожидающие CFP за один вызов, подбирая смартфоны один раз на каждый набор одинаковых критериев.
+     */
+    private boolean coalesceOffers;
+
+    private MessageDispatcher dispatcher;
+
+    private OfferCache offerCache;
+
+    /**
+     * Критерии постоянных запросов по подписчикам.
+     */
+    private final StandingQueries<AID> standingQueries = new StandingQueries<>();
+
+    /**
+     * Сообщения SUBSCRIBE по подписчикам, на которые отправляются уведомления.
+     */
+    private final Map<AID, ACLMessage> subscriptions = new HashMap<>();
+
+    /**
+     * Без аргументов запуска открывается окно для пополнения каталога. Иначе агент работает без окна, а каталог
+     * берется из аргументов: каждый аргумент - {@link Smartphone}, строка {@code name;ram;cpu;os;price}, путь к
+     * файлу каталога с префиксом {@link #CATALOGUE_FILE_ARGUMENT} или готовый {@link SmartphoneCatalogue} с
+     * остатками, например, от тестового стенда. Аргументы с префиксами {@link #BATCH_SIZE_ARGUMENT},
+     * {@link #MAX_BACKLOG_ARGUMENT}, {@link #OFFER_CACHE_SIZE_ARGUMENT} и {@link #COALESCE_CFP_ARGUMENT} задают размер
+     * пачки сообщений, порог перегрузки, размер кэша ответов и совместную обработку одинаковых CFP. С неверной
+     * настройкой агент не запускается, а неразобранная позиция каталога пропускается.
+     */
     @Override
     protected void setup() {
 
-        gui = new TechRetailerAgentGui(this);
-        gui.showGui();
+        int offerCacheSize = DEFAULT_OFFER_CACHE_SIZE;
+        final Object[] args = getArguments();
+        if (args != null && args.length > 0) {
+            try {
+                offerCacheSize = loadCatalogue(args, offerCacheSize);
+            } catch (IllegalArgumentException e) {
+                LOG.error("Retailer {} not started: {}", getLocalName(), e.getMessage());
+                doDelete();
+                return;
+            }
+        } else if (GraphicsEnvironment.isHeadless()) {
+            LOG.warn("Retailer {} started without a display and with an empty catalogue", getLocalName());
+        } else {
+            gui = new TechRetailerAgentGui(this);
+            gui.showGui();
+        }
 
-        // Register the tech-selling service in the yellow pages
-        final DFAgentDescription dfAgentDescription = new DFAgentDescription();
-        dfAgentDescription.setName(this.getAID());
-        final ServiceDescription serviceDescription = new ServiceDescription();
-        serviceDescription.setType(SMARTPHONE_SELL);
-        serviceDescription.setName("JADE-tech-trading");
-        dfAgentDescription.addServices(serviceDescription);
+        offerCache = new OfferCache(offerCacheSize);
+
+        // Register the tech-selling service in the yellow pages, the summary of the catalogue follows once it is loaded
         try {
-            DFService.register(this, dfAgentDescription);
+            DFService.register(this, describeService(null));
             LOG.info("New retailer registered: [name: {}]", this.getName());
         } catch (FIPAException fe) {
             LOG.error(fe.getMessage());
             fe.printStackTrace();
         }
-
-        // Add the behaviour serving queries from buyer agents
-        addBehaviour(new TechRetailerAgent.OfferRequestsServer());
+        addBehaviour(new SummaryPublisher());
+
+        // Add the behaviour serving queries and purchase orders from buyer agents, orders first
+        final OfferRequestsServer offerRequestsServer = new OfferRequestsServer();
+        final SubscriptionsServer subscriptionsServer = new SubscriptionsServer();
+        dispatcher = new MessageDispatcher(this, batchSize)
+                .register(ACLMessage.ACCEPT_PROPOSAL, MessageDispatcher.Priority.HIGH, new PurchaseOrdersServer())
+                .register(ACLMessage.SUBSCRIBE, SMARTPHONE_WATCH_CONVERSATION_ID, subscriptionsServer)
+                .register(ACLMessage.CANCEL, SMARTPHONE_WATCH_CONVERSATION_ID, subscriptionsServer::cancel);
+        if (coalesceOffers) {
+            dispatcher.registerBatch(ACLMessage.CFP, MessageDispatcher.Priority.NORMAL, offerRequestsServer::acceptAll);
+        } else {
+            dispatcher.register(ACLMessage.CFP, offerRequestsServer);
+        }
+        addBehaviour(dispatcher);
 
         // Add the behavior telling log its catalogue
         addBehaviour(new TickerBehaviour(this, 20000) {
@@ -69,12 +209,10 @@ public class TechRetailerAgent extends Agent {
                             getLocalName(),
                             smartphoneList.stream().map(Smartphone::toString).collect(Collectors.joining(", ")));
                 }
+                LOG.debug("{} offer cache: {}", getLocalName(), offerCache);
             }
 
         });
-
-        // Add the behaviour serving purchase orders from buyer agents
-        addBehaviour(new TechRetailerAgent.PurchaseOrdersServer());
     }
 
     @Override
@@ -87,57 +225,325 @@ public class TechRetailerAgent extends Agent {
             fe.printStackTrace();
         }
         // Close the GUI
-        gui.dispose();
+        if (gui != null) {
+            gui.dispose();
+        }
         // Printout a dismissal message
         LOG.info("Seller-agent {} terminating.", getAID().getName());
     }
 
+    /**
+     * Описание услуги продажи смартфонов для DF.
+     *
+     * @param summary
+     *            сводка каталога или {@code null}, если покупатели должны спрашивать продавца о любых смартфонах
+     */
+    private DFAgentDescription describeService(final CatalogueSummary summary) {
+        final DFAgentDescription dfAgentDescription = new DFAgentDescription();
+        dfAgentDescription.setName(this.getAID());
+        final ServiceDescription serviceDescription = new ServiceDescription();
+        serviceDescription.setType(SMARTPHONE_SELL);
+        serviceDescription.setName("JADE-tech-trading");
+        serviceDescription.addProperties(new Property(CODEC_VERSION_PROPERTY, String.valueOf(SmartphoneCodec.VERSION)));
+        if (summary != null) {
+            summary.toProperties()
+                    .forEach((name, value) -> serviceDescription.addProperties(new Property(name, value)));
+        }
+        dfAgentDescription.addServices(serviceDescription);
+        return dfAgentDescription;
+    }
+
+    /**
+     * Заполнение каталога и настройка агента из аргументов запуска.
+     *
+     * @param args
+     *            смартфоны, их строковые представления, каталоги или настройки
+     * @param offerCacheSize
+     *            размер кэша ответов по умолчанию
+     * @return размер кэша ответов
+     * @throws IllegalArgumentException
+     *             если значение настройки не положительное число
+     */
+    private int loadCatalogue(final Object[] args, final int offerCacheSize) {
+        int cacheSize = offerCacheSize;
+        final List<Smartphone> smartphones = new ArrayList<>();
+        for (final Object arg : args) {
+            if (arg instanceof Smartphone) {
+                smartphones.add((Smartphone) arg);
+                continue;
+            }
+            if (arg instanceof SmartphoneCatalogue) {
+                final SmartphoneCatalogue catalogue = (SmartphoneCatalogue) arg;
+                smartphoneList.addAll(catalogue);
+                LOG.info("Retailer {} loaded {} catalogue positions", getLocalName(), catalogue.size());
+                continue;
+            }
+            final String value = String.valueOf(arg);
+            if (value.startsWith(BATCH_SIZE_ARGUMENT)) {
+                batchSize = parsePositive(value.substring(BATCH_SIZE_ARGUMENT.length()), "Batch size");
+            } else if (value.startsWith(MAX_BACKLOG_ARGUMENT)) {
+                maxBacklog = parsePositive(value.substring(MAX_BACKLOG_ARGUMENT.length()), "Max backlog");
+            } else if (value.startsWith(OFFER_CACHE_SIZE_ARGUMENT)) {
+                cacheSize = parsePositive(value.substring(OFFER_CACHE_SIZE_ARGUMENT.length()), "Offer cache size");
+            } else if (value.startsWith(COALESCE_CFP_ARGUMENT)) {
+                coalesceOffers = Boolean.parseBoolean(value.substring(COALESCE_CFP_ARGUMENT.length()).trim());
+            } else {
+                try {
+                    if (value.startsWith(CATALOGUE_FILE_ARGUMENT)) {
+                        importCatalogue(Paths.get(value.substring(CATALOGUE_FILE_ARGUMENT.length())));
+                    } else {
+                        smartphones.add(SmartphoneFormat.parseCatalogueItem(value));
+                    }
+                } catch (IllegalArgumentException e) {
+                    LOG.error("Skipping catalogue argument: {}", e.getMessage());
+                }
+            }
+        }
+        if (!smartphones.isEmpty()) {
+            smartphoneList.addAll(smartphones);
+            LOG.info("Retailer {} loaded {} smartphones from startup arguments", getLocalName(), smartphones.size());
+        }
+        return cacheSize;
+    }
+
+    private static int parsePositive(final String value, final String setting) {
+        final int parsed;
+        try {
+            parsed = Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(setting + " must be a number: " + value, e);
+        }
+        if (parsed <= 0) {
+            throw new IllegalArgumentException(setting + " must be positive: " + parsed);
+        }
+        return parsed;
+    }
+
+    /**
+     * @return {@code true}, если покупатель указал срок ответа и он уже прошел, так что ответ будет отброшен
+     */
+    private static boolean isExpired(final ACLMessage aclMessage) {
+        final Date replyBy = aclMessage.getReplyByDate();
+        return replyBy != null && replyBy.getTime() < System.currentTimeMillis();
+    }
+
+    /**
+     * Массовая загрузка каталога из файла за один проход, без поштучного добавления. Файл читается в вызывающем
+     * потоке, а загруженные смартфоны добавляются в каталог одним поведением агента.
+     *
+     * @param path
+     *            путь к файлу каталога в формате CSV или {@link SmartphoneCodec}
+     */
+    public void importCatalogue(final Path path) {
+        final List<Smartphone> smartphones;
+        try {
+            smartphones = SmartphoneCatalogueLoader.load(path);
+        } catch (IOException e) {
+            LOG.error("Failed to import catalogue from {}: {}", path, e.getMessage());
+            return;
+        }
+        addBehaviour(new OneShotBehaviour() {
+
+            @Override
+            public void action() {
+                smartphoneList.addAll(smartphones);
+                notifySubscribers(smartphones);
+            }
+        });
+    }
+
+    /**
+     * Вызывается окном продавца из потока Swing, поэтому сам смартфон добавляется в каталог поведением агента.
+     */
     public void addSmartphoneList(final Smartphone smartphone) {
-        this.smartphoneList.add(smartphone);
-        LOG.info("Smartphone inserted into catalogue. Smartphone = {}", smartphone.toString());
+        addBehaviour(new OneShotBehaviour() {
+
+            @Override
+            public void action() {
+                final String sku = smartphoneList.add(smartphone);
+                LOG.info("Smartphone inserted into catalogue. Smartphone = {}, SKU = {}, in stock = {}",
+                        smartphone.toString(),
+                        sku,
+                        smartphoneList.quantity(sku));
+                notifySubscribers(Collections.singletonList(smartphone));
+            }
+        });
+    }
+
+    /**
+     * Уведомление подписчиков о поступивших смартфонах: каждый подписчик получает один INFORM со смартфонами,
+     * подходящими под его критерии. Вызывается в потоке агента после пополнения каталога.
+     *
+     * @param smartphones
+     *            поступившие смартфоны с артикулами каталога
+     */
+    private void notifySubscribers(final List<Smartphone> smartphones) {
+        if (standingQueries.isEmpty()) {
+            return;
+        }
+        final Map<AID, List<Smartphone>> matchesBySubscriber = new LinkedHashMap<>();
+        for (final Smartphone smartphone : smartphones) {
+            for (final AID subscriber : standingQueries.matching(smartphone)) {
+                matchesBySubscriber.computeIfAbsent(subscriber, key -> new ArrayList<>()).add(smartphone);
+            }
+        }
+        matchesBySubscriber.forEach((subscriber, matches) -> notifySubscriber(subscriptions.get(subscriber), matches));
+    }
+
+    private void notifySubscriber(final ACLMessage subscription, final List<Smartphone> matches) {
+        final ACLMessage inform = subscription.createReply();
+        inform.setPerformative(ACLMessage.INFORM);
+        inform.setByteSequenceContent(SmartphoneCodec.encodeList(matches));
+        send(inform);
     }
 
     /**
-     * Inner class OfferRequestsServer. This is the behaviour used by Book-seller agents to serve incoming requests for
+     * Публикация сводки каталога в DF после изменения состава каталога, но не чаще раза в
+     * {@link #SUMMARY_REFRESH_PERIOD}, чтобы поток продаж и поступлений не превращался в поток обновлений DF. Позицию,
+     * добавленную после последнего обновления, покупатели могут пропускать до следующего.
+     */
+    private class SummaryPublisher extends TickerBehaviour {
+
+        private long publishedVersion = -1;
+
+        SummaryPublisher() {
+            super(TechRetailerAgent.this, SUMMARY_REFRESH_PERIOD);
+        }
+
+        @Override
+        protected void onTick() {
+            final long version = smartphoneList.getVersion();
+            if (version == publishedVersion) {
+                return;
+            }
+            try {
+                DFService.modify(myAgent, describeService(smartphoneList.summary()));
+                publishedVersion = version;
+            } catch (FIPAException fe) {
+                LOG.error("Failed to publish the catalogue summary: {}", fe.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Inner class OfferRequestsServer. This is the handler used by Book-seller agents to serve incoming requests for
      * offer from buyer agents. If the requested book is in the local catalogue the seller agent replies with a PROPOSE
      * message specifying the price. Otherwise a REFUSE message is sent back.
+     * <p>
+     * Запросы с истекшим сроком ответа пропускаются, а при очереди длиннее {@link #maxBacklog} сразу отклоняются
+     * ответом "overloaded" без разбора содержимого и подбора смартфонов. В режиме {@link #coalesceOffers} сервер
+     * получает все ожидающие CFP разом через {@link #acceptAll(List)}.
      */
-    private class OfferRequestsServer extends CyclicBehaviour {
+    private class OfferRequestsServer implements Consumer<ACLMessage> {
 
         @Override
-        public void action() {
-            final MessageTemplate messageTemplate = MessageTemplate.MatchPerformative(ACLMessage.CFP);
-            final ACLMessage aclMessage = myAgent.receive(messageTemplate);
-            if (aclMessage != null) {
-                // CFP Message received. Process it
-                final byte[] byteSequenceContent = aclMessage.getByteSequenceContent();
+        public void accept(final ACLMessage aclMessage) {
+            final OfferRequest request = admit(aclMessage);
+            if (request != null) {
+                answer(request.message, offerFor(request));
+            }
+        }
 
-                // получаем требуемый смартфон после из запроса
-                final Smartphone smartphone = SerializationUtils.deserialize(byteSequenceContent);
+        /**
+         * Ответ на пачку CFP: одинаковые запросы подбираются один раз, и готовый ответ рассылается всем их
+         * отправителям.
+         *
+         * @param aclMessages
+         *            CFP в порядке поступления
+         */
+        void acceptAll(final List<ACLMessage> aclMessages) {
+            final Map<List<Object>, List<OfferRequest>> requestsByKey = new LinkedHashMap<>();
+            for (final ACLMessage aclMessage : aclMessages) {
+                final OfferRequest request = admit(aclMessage);
+                if (request != null) {
+                    requestsByKey.computeIfAbsent(request.key, key -> new ArrayList<>()).add(request);
+                }
+            }
+            requestsByKey.values().forEach(requests -> {
+                final byte[] offer = offerFor(requests.get(0));
+                requests.forEach(request -> answer(request.message, offer));
+            });
+        }
 
+        /**
+         * Разбор CFP. Просроченные, лишние при перегрузке и нечитаемые запросы отсеиваются.
+         *
+         * @return разобранный запрос или {@code null}, если отвечать не нужно или ответ уже отправлен
+         */
+        private OfferRequest admit(final ACLMessage aclMessage) {
+            if (isExpired(aclMessage)) {
+                // покупатель уже не ждет ответа
+                LOG.debug("Expired CFP from {} skipped", aclMessage.getSender().getName());
+                return null;
+            }
+            if (dispatcher.getBacklog() > maxBacklog) {
                 final ACLMessage reply = aclMessage.createReply();
+                reply.setPerformative(ACLMessage.REFUSE);
+                reply.setContent("overloaded");
+                send(reply);
+                return null;
+            }
 
-                // получаем список подходящих смартфонов
-                final ArrayList<Smartphone> matchesSmartphoneList = getMatchesSmartphones(smartphone);
+            // CFP Message received. Process it
+            final byte[] byteSequenceContent = aclMessage.getByteSequenceContent();
 
-                if (!matchesSmartphoneList.isEmpty()) {
-                    // The requested book is available for sale. Reply with the price
-                    reply.setPerformative(ACLMessage.PROPOSE);
-                    final byte[] contentBytes = SerializationUtils.serialize(matchesSmartphoneList);
-                    if (contentBytes != null) {
-                        reply.setByteSequenceContent(contentBytes);
-                    } else {
-                        reply.setContent("something went wrong during create byte array");
-                    }
+            // получаем требуемый смартфон после из запроса
+            final Smartphone smartphone;
+            try {
+                smartphone = SmartphoneCodec.decode(byteSequenceContent);
+            } catch (IllegalArgumentException | SerializationException e) {
+                LOG.error("Malformed CFP from {}: {}", aclMessage.getSender().getName(), e.getMessage());
+                final ACLMessage reply = aclMessage.createReply();
+                reply.setPerformative(ACLMessage.NOT_UNDERSTOOD);
+                reply.setContent("malformed-request");
+                send(reply);
+                return null;
+            }
+
+            // отвечаем в том же формате, в котором пришел запрос, чтобы покупатели прежних версий нас поняли
+            return new OfferRequest(aclMessage,
+                    smartphone,
+                    parseSortKey(aclMessage.getUserDefinedParameter(SORT_KEY_PARAMETER)),
+                    parseResultLimit(aclMessage.getUserDefinedParameter(RESULT_LIMIT_PARAMETER)),
+                    SKYLINE_REPLY_MODE.equals(aclMessage.getUserDefinedParameter(REPLY_MODE_PARAMETER)),
+                    SmartphoneCodec.isLegacy(byteSequenceContent) ? 0 : SmartphoneCodec.versionOf(byteSequenceContent));
+        }
+
+        /**
+         * Готовый ответ на такие же критерии или закодированный список подходящих смартфонов.
+         *
+         * @return содержимое PROPOSE или {@link OfferCache#NO_OFFER}
+         */
+        private byte[] offerFor(final OfferRequest request) {
+            byte[] offer = offerCache.get(request.key, smartphoneList.getVersion());
+            if (offer == null) {
+                final ArrayList<Smartphone> matchesSmartphoneList = request.skyline
+                        ? getSkylineSmartphones(request.criteria, request.sortKey, request.limit)
+                        : getMatchesSmartphones(request.criteria, request.sortKey, request.limit);
+                if (matchesSmartphoneList.isEmpty()) {
+                    offer = OfferCache.NO_OFFER;
                 } else {
-                    // The requested book is NOT available for sale.
-                    reply.setPerformative(ACLMessage.REFUSE);
-                    reply.setContent("not-available");
+                    offer = request.encoding == 0
+                            ? SerializationUtils.serialize(matchesSmartphoneList)
+                            : SmartphoneCodec.encodeList(matchesSmartphoneList, request.encoding);
                 }
-                myAgent.send(reply);
+                offerCache.put(request.key, offer);
+            }
+            return offer;
+        }
+
+        private void answer(final ACLMessage aclMessage, final byte[] offer) {
+            final ACLMessage reply = aclMessage.createReply();
+            if (offer != OfferCache.NO_OFFER) {
+                // The requested book is available for sale. Reply with the price
+                reply.setPerformative(ACLMessage.PROPOSE);
+                reply.setByteSequenceContent(offer);
             } else {
-                block();
+                // The requested book is NOT available for sale.
+                reply.setPerformative(ACLMessage.REFUSE);
+                reply.setContent("not-available");
             }
+            send(reply);
         }
 
         /**
@@ -145,73 +551,214 @@ public class TechRetailerAgent extends Agent {
          * 
          * @param requestedSmartphone
          *            критерии пользователя.
+         * @param sortKey
+         *            порядок ранжирования, {@code null} - в порядке каталога
+         * @param limit
+         *            максимальное количество смартфонов, {@code 0} - без ограничения
          * @return список подходящих смартфонов
          */
-        private ArrayList<Smartphone> getMatchesSmartphones(final Smartphone requestedSmartphone) {
-
-            return smartphoneList.stream().filter(smartphone -> {
-                final Boolean nameMatch = Optional.ofNullable(requestedSmartphone.getName())
-                        .map(name -> smartphone.getName().toLowerCase().contains(name.toLowerCase()))
-                        .orElse(Boolean.TRUE);
-
-                final Boolean ramMatch = Optional.ofNullable(requestedSmartphone.getInstalledRam())
-                        .map(ram -> smartphone.getInstalledRam().compareTo(ram) >= 0)
-                        .orElse(Boolean.TRUE);
-
-                final Boolean cpuMatch = Optional.ofNullable(requestedSmartphone.getCpuSpeed())
-                        .map(cpu -> smartphone.getCpuSpeed().compareTo(cpu) >= 0)
-                        .orElse(Boolean.TRUE);
+        private ArrayList<Smartphone> getMatchesSmartphones(final Smartphone requestedSmartphone,
+                final SmartphoneSortKey sortKey,
+                final int limit) {
+            if (limit > 0) {
+                return smartphoneList.findMatches(requestedSmartphone,
+                        sortKey != null ? sortKey : SmartphoneSortKey.PRICE,
+                        limit);
+            }
+            final ArrayList<Smartphone> matches = smartphoneList.findMatches(requestedSmartphone);
+            if (sortKey != null) {
+                matches.sort(sortKey.getComparator());
+            }
+            return matches;
+        }
 
-                final Boolean osMatch = Optional.ofNullable(requestedSmartphone.getSmartphoneOs())
-                        .map(os -> os.equals(smartphone.getSmartphoneOs()))
-                        .orElse(Boolean.TRUE);
+        /**
+         * Получение Парето-оптимальных смартфонов среди подходящих под критерии пользователя.
+         *
+         * @param requestedSmartphone
+         *            критерии пользователя.
+         * @param sortKey
+         *            порядок ранжирования, {@code null} - в порядке каталога
+         * @param limit
+         *            максимальное количество смартфонов, {@code 0} - без ограничения
+         * @return смартфоны, которые никакой другой подходящий не превосходит по цене, памяти и частоте
+         */
+        private ArrayList<Smartphone> getSkylineSmartphones(final Smartphone requestedSmartphone,
+                final SmartphoneSortKey sortKey,
+                final int limit) {
+            final ArrayList<Smartphone> skyline =
+                    SmartphoneSkyline.of(getMatchesSmartphones(requestedSmartphone, null, 0));
+            if (sortKey != null) {
+                skyline.sort(sortKey.getComparator());
+            }
+            if (limit > 0 && skyline.size() > limit) {
+                return new ArrayList<>(skyline.subList(0, limit));
+            }
+            return skyline;
+        }
 
-                final Boolean priceMatch = Optional.ofNullable(requestedSmartphone.getPrice())
-                        .map(price -> smartphone.getPrice().compareTo(price) <= 0)
-                        .orElse(Boolean.TRUE);
+        private SmartphoneSortKey parseSortKey(final String sortKey) {
+            if (sortKey == null) {
+                return null;
+            }
+            try {
+                return SmartphoneSortKey.valueOf(sortKey);
+            } catch (IllegalArgumentException e) {
+                LOG.warn("Unknown sort key {} ignored", sortKey);
+                return null;
+            }
+        }
 
-                return nameMatch && ramMatch && cpuMatch && osMatch && priceMatch;
-            }).collect(Collectors.toCollection(ArrayList::new));
+        private int parseResultLimit(final String limit) {
+            if (limit == null) {
+                return 0;
+            }
+            try {
+                return Math.max(Integer.parseInt(limit), 0);
+            } catch (NumberFormatException e) {
+                LOG.warn("Invalid result limit {} ignored", limit);
+                return 0;
+            }
         }
     }
 
     /**
-     * Inner class PurchaseOrdersServer. This is the behaviour used by Book-seller agents to serve incoming offer
-     * acceptances (i.e. purchase orders) from buyer agents. The seller agent removes the purchased book from its
-     * catalogue and replies with an INFORM message to notify the buyer that the purchase has been successfully
-     * completed.
+     * Регистрация постоянных запросов покупателей. На SUBSCRIBE продавец отвечает AGREE и, если подходящие смартфоны
+     * уже есть в каталоге, сразу присылает INFORM с самым дешевым из них. У каждого покупателя один постоянный запрос:
+     * новый SUBSCRIBE заменяет прежний, CANCEL его снимает.
      */
-    private class PurchaseOrdersServer extends CyclicBehaviour {
+    private class SubscriptionsServer implements Consumer<ACLMessage> {
 
         @Override
-        public void action() {
-            final MessageTemplate messageTemplate = MessageTemplate.MatchPerformative(ACLMessage.ACCEPT_PROPOSAL);
-            final ACLMessage aclMessage = myAgent.receive(messageTemplate);
-            if (aclMessage != null) {
-                // ACCEPT_PROPOSAL Message received. Process it
-                final String name = aclMessage.getContent();
+        public void accept(final ACLMessage aclMessage) {
+            final Smartphone criteria;
+            try {
+                criteria = SmartphoneCodec.decode(aclMessage.getByteSequenceContent());
+            } catch (IllegalArgumentException | SerializationException e) {
+                LOG.error("Malformed subscription from {}: {}", aclMessage.getSender().getName(), e.getMessage());
                 final ACLMessage reply = aclMessage.createReply();
+                reply.setPerformative(ACLMessage.NOT_UNDERSTOOD);
+                reply.setContent("malformed-request");
+                send(reply);
+                return;
+            }
+            standingQueries.put(aclMessage.getSender(), criteria);
+            subscriptions.put(aclMessage.getSender(), aclMessage);
+            LOG.info("{} subscribed to {}, {} subscribers",
+                    aclMessage.getSender().getName(),
+                    criteria,
+                    standingQueries.size());
+
+            final ACLMessage reply = aclMessage.createReply();
+            reply.setPerformative(ACLMessage.AGREE);
+            send(reply);
+
+            final List<Smartphone> matches = smartphoneList.findMatches(criteria, SmartphoneSortKey.PRICE, 1);
+            if (!matches.isEmpty()) {
+                notifySubscriber(aclMessage, matches);
+            }
+        }
 
-                final boolean removed = smartphoneList.removeIf(smartphone -> smartphone.getName().equals(name));
+        void cancel(final ACLMessage aclMessage) {
+            subscriptions.remove(aclMessage.getSender());
+            if (standingQueries.remove(aclMessage.getSender())) {
+                LOG.info("{} unsubscribed, {} subscribers", aclMessage.getSender().getName(), standingQueries.size());
+            }
+        }
+    }
 
-                if (removed) {
-                    reply.setPerformative(ACLMessage.INFORM);
-                    LOG.info("{} sold to agent {}", name, aclMessage.getSender().getName());
-                } else {
-                    // The requested book has been sold to another buyer in the meanwhile .
-                    reply.setPerformative(ACLMessage.FAILURE);
-                    reply.setContent("not-available");
-                }
-                myAgent.send(reply);
+    /**
+     * Inner class PurchaseOrdersServer. This is the handler used by Book-seller agents to serve incoming offer
+     * acceptances (i.e. purchase orders) from buyer agents. The seller agent takes one unit of the purchased SKU from
+     * its stock and replies with an INFORM message to notify the buyer that the purchase has been successfully
+     * completed.
+     * <p>
+     * Заказ с истекшим сроком ответа не исполняется: покупатель уже счел покупку несостоявшейся.
+     */
+    private class PurchaseOrdersServer implements Consumer<ACLMessage> {
 
-                // завершение работы если все распродано
-                if (smartphoneList.isEmpty()) {
-                    TechRetailerAgent.this.doDelete();
-                }
+        @Override
+        public void accept(final ACLMessage aclMessage) {
+            if (isExpired(aclMessage)) {
+                LOG.info("Expired purchase order from {} skipped", aclMessage.getSender().getName());
+                return;
+            }
+            // ACCEPT_PROPOSAL Message received. Process it
+            final String name = aclMessage.getContent();
+            final ACLMessage reply = aclMessage.createReply();
+
+            final String sku = aclMessage.getUserDefinedParameter(SKU_PARAMETER) != null
+                    ? aclMessage.getUserDefinedParameter(SKU_PARAMETER)
+                    : findSkuByName(name);
+            final boolean sold = smartphoneList.purchase(sku);
+
+            if (sold) {
+                reply.setPerformative(ACLMessage.INFORM);
+                LOG.info("{} ({}) sold to agent {}, {} left in stock",
+                        name,
+                        sku,
+                        aclMessage.getSender().getName(),
+                        smartphoneList.quantity(sku));
             } else {
-                block();
+                // The requested book has been sold to another buyer in the meanwhile .
+                reply.setPerformative(ACLMessage.FAILURE);
+                reply.setContent("not-available");
             }
+            send(reply);
+
+            // завершение работы если все распродано
+            if (smartphoneList.isEmpty()) {
+                TechRetailerAgent.this.doDelete();
+            }
+        }
+
+        /**
+         * Поиск позиции для покупателей прежних версий, которые присылают только наименование.
+         */
+        private String findSkuByName(final String name) {
+            return smartphoneList.stream()
+                    .filter(smartphone -> Objects.equals(name, smartphone.getName()))
+                    .map(Smartphone::getSku)
+                    .findFirst()
+                    .orElse(null);
         }
     }
 
+    /**
+     * Разобранный CFP вместе с ключом, по которому совпадают одинаковые запросы.
+     */
+    private static final class OfferRequest {
+
+        private final ACLMessage message;
+
+        private final Smartphone criteria;
+
+        private final SmartphoneSortKey sortKey;
+
+        private final int limit;
+
+        private final boolean skyline;
+
+        /**
+         * Версия {@link SmartphoneCodec} ответа, {@code 0} для сериализации Java.
+         */
+        private final byte encoding;
+
+        private final List<Object> key;
+
+        OfferRequest(final ACLMessage message,
+                final Smartphone criteria,
+                final SmartphoneSortKey sortKey,
+                final int limit,
+                final boolean skyline,
+                final byte encoding) {
+            this.message = message;
+            this.criteria = criteria;
+            this.sortKey = sortKey;
+            this.limit = limit;
+            this.skyline = skyline;
+            this.encoding = encoding;
+            this.key = OfferCache.keyOf(criteria, sortKey, limit, skyline, encoding);
+        }
+    }
 }
@@ -11,6 +11,16 @@ import java.util.Objects;
  */
 public class Smartphone implements Serializable {
 
+    /**
+     * Значение, вычисленное для класса до появления артикула, чтобы агенты прежних версий могли читать смартфоны.
+     */
+    private static final long serialVersionUID = 1939683607870856454L;
+
+    /**
+     * Артикул продавца, одинаковый для всех единиц одной модели. Задается каталогом продавца.
+     */
+    private String sku;
+
     /**
      * Наименование модели.
      */
@@ -39,6 +49,10 @@ public class Smartphone implements Serializable {
     public Smartphone() {
     }
 
+    public String getSku() {
+        return sku;
+    }
+
     public String getName() {
         return name;
     }
@@ -70,6 +84,11 @@ public class Smartphone implements Serializable {
                 getPrice());
     }
 
+    public Smartphone setSku(String sku) {
+        this.sku = sku;
+        return this;
+    }
+
     public Smartphone setName(String name) {
         this.name = name;
         return this;
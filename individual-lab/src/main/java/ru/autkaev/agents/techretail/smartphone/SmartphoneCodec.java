@@ -0,0 +1,369 @@
+package ru.autkaev.agents.techretail.smartphone;
+
+import org.apache.commons.lang3.SerializationUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Компактное бинарное представление смартфонов для CFP и PROPOSE сообщений.
+ * <p>
+ * Сообщение начинается с байта версии формата, за ним идет одна запись (CFP) или varint с количеством записей и сами
+ * записи (PROPOSE). Запись состоит из байта с маской заданных полей и значений этих полей: наименование в UTF-8 с
+ * длиной в varint, память в zigzag varint, частота и цена как 8 байт {@code double}, ОС порядковым номером. Начиная со
+ * второй версии за ними следует артикул в UTF-8 с длиной в varint. Записи первой версии по-прежнему читаются, а ответ
+ * на них можно записать в той же версии, см. {@link #versionOf(byte[])}.
+ * <p>
+ * Сообщения в формате стандартной java-сериализации от агентов прежних версий распознаются по заголовку потока и
+ * читаются через {@link SerializationUtils}.
+ *
+ * @author Anton Utkaev
+ * @since 2026.10.18
+ */
+public final class SmartphoneCodec {
+
+    /**
+     * Текущая версия формата.
+     */
+    public static final byte VERSION = 2;
+
+    /**
+     * Первая версия формата, без артикула.
+     */
+    private static final byte FIRST_VERSION = 1;
+
+    /**
+     * Первый байт заголовка потока java-сериализации.
+     */
+    private static final byte JAVA_STREAM_MAGIC = (byte) 0xAC;
+
+    private static final int NAME = 1;
+
+    private static final int RAM = 1 << 1;
+
+    private static final int CPU = 1 << 2;
+
+    private static final int OS = 1 << 3;
+
+    private static final int PRICE = 1 << 4;
+
+    private static final int SKU = 1 << 5;
+
+    private static final SmartphoneOs[] OS_VALUES = SmartphoneOs.values();
+
+    private SmartphoneCodec() {
+    }
+
+    /**
+     * Проверка, что содержимое сообщения записано java-сериализацией.
+     *
+     * @param bytes
+     *            содержимое сообщения
+     * @return {@code true} для сообщений от агентов прежних версий
+     */
+    public static boolean isLegacy(final byte[] bytes) {
+        return bytes != null && bytes.length > 0 && bytes[0] == JAVA_STREAM_MAGIC;
+    }
+
+    /**
+     * Версия формата сообщения.
+     *
+     * @param bytes
+     *            содержимое сообщения в текущем или прежнем формате, но не в java-сериализации
+     * @return версия формата
+     * @throws IllegalArgumentException
+     *             если версия не поддерживается
+     */
+    public static byte versionOf(final byte[] bytes) {
+        if (bytes == null || bytes.length == 0) {
+            throw new IllegalArgumentException("Empty smartphone payload");
+        }
+        return requireVersion(bytes[0]);
+    }
+
+    public static byte[] encode(final Smartphone smartphone) {
+        final Writer writer = new Writer(VERSION, 32);
+        writer.writeSmartphone(smartphone);
+        return writer.toByteArray();
+    }
+
+    public static byte[] encodeList(final List<Smartphone> smartphones) {
+        return encodeList(smartphones, VERSION);
+    }
+
+    /**
+     * Запись списка смартфонов в заданной версии формата, например, для ответа агенту прежней версии.
+     *
+     * @param smartphones
+     *            список смартфонов
+     * @param version
+     *            версия формата, поля, которых в ней нет, не записываются
+     * @return содержимое сообщения
+     */
+    public static byte[] encodeList(final List<Smartphone> smartphones, final byte version) {
+        final Writer writer = new Writer(requireVersion(version), 8 + smartphones.size() * 32);
+        writer.writeVarInt(smartphones.size());
+        smartphones.forEach(writer::writeSmartphone);
+        return writer.toByteArray();
+    }
+
+    /**
+     * Чтение одного смартфона.
+     *
+     * @param bytes
+     *            содержимое сообщения в текущем формате или в java-сериализации
+     * @return смартфон
+     * @throws IllegalArgumentException
+     *             если формат не поддерживается или данные повреждены
+     */
+    public static Smartphone decode(final byte[] bytes) {
+        if (isLegacy(bytes)) {
+            final Object smartphone = SerializationUtils.deserialize(bytes);
+            if (!(smartphone instanceof Smartphone)) {
+                throw new IllegalArgumentException("Serialized object is not a smartphone: " + typeOf(smartphone));
+            }
+            return (Smartphone) smartphone;
+        }
+        final Reader reader = new Reader(ByteBuffer.wrap(requirePayload(bytes)));
+        return reader.readSmartphone();
+    }
+
+    /**
+     * Чтение списка смартфонов.
+     *
+     * @param bytes
+     *            содержимое сообщения в текущем формате или в java-сериализации
+     * @return список смартфонов
+     * @throws IllegalArgumentException
+     *             если формат не поддерживается или данные повреждены
+     */
+    public static ArrayList<Smartphone> decodeList(final byte[] bytes) {
+        if (isLegacy(bytes)) {
+            final Object list = SerializationUtils.deserialize(bytes);
+            if (!(list instanceof List)) {
+                throw new IllegalArgumentException("Serialized object is not a list: " + typeOf(list));
+            }
+            final ArrayList<Smartphone> smartphones = new ArrayList<>(((List<?>) list).size());
+            for (final Object smartphone : (List<?>) list) {
+                if (!(smartphone instanceof Smartphone)) {
+                    throw new IllegalArgumentException("Serialized list holds " + typeOf(smartphone));
+                }
+                smartphones.add((Smartphone) smartphone);
+            }
+            return smartphones;
+        }
+        return decodeList(ByteBuffer.wrap(requirePayload(bytes)));
+    }
+
+    private static String typeOf(final Object value) {
+        return value != null ? value.getClass().getName() : "null";
+    }
+
+    /**
+     * Чтение списка смартфонов в текущем формате, например, из отображенного в память файла каталога.
+     *
+     * @param buffer
+     *            буфер, позиция которого указывает на байт версии
+     * @return список смартфонов
+     * @throws IllegalArgumentException
+     *             если формат не поддерживается или данные повреждены
+     */
+    public static ArrayList<Smartphone> decodeList(final ByteBuffer buffer) {
+        final Reader reader = new Reader(buffer);
+        final int size = reader.readVarInt();
+        final ArrayList<Smartphone> smartphones = new ArrayList<>(Math.min(size, buffer.remaining()));
+        for (int i = 0; i < size; i++) {
+            smartphones.add(reader.readSmartphone());
+        }
+        return smartphones;
+    }
+
+    private static byte requireVersion(final byte version) {
+        if (version < FIRST_VERSION || version > VERSION) {
+            throw new IllegalArgumentException("Unsupported smartphone payload version: " + version);
+        }
+        return version;
+    }
+
+    private static byte[] requirePayload(final byte[] bytes) {
+        if (bytes == null) {
+            throw new IllegalArgumentException("Empty smartphone payload");
+        }
+        return bytes;
+    }
+
+    private static final class Writer {
+
+        private final byte version;
+
+        private byte[] buffer;
+
+        private int position;
+
+        Writer(final byte version, final int capacity) {
+            this.version = version;
+            buffer = new byte[capacity];
+            writeByte(version);
+        }
+
+        void writeSmartphone(final Smartphone smartphone) {
+            final byte[] name = smartphone.getName() != null
+                    ? smartphone.getName().getBytes(StandardCharsets.UTF_8)
+                    : null;
+            final byte[] sku = smartphone.getSku() != null && version > FIRST_VERSION
+                    ? smartphone.getSku().getBytes(StandardCharsets.UTF_8)
+                    : null;
+            writeByte((name != null ? NAME : 0)
+                    | (smartphone.getInstalledRam() != null ? RAM : 0)
+                    | (smartphone.getCpuSpeed() != null ? CPU : 0)
+                    | (smartphone.getSmartphoneOs() != null ? OS : 0)
+                    | (smartphone.getPrice() != null ? PRICE : 0)
+                    | (sku != null ? SKU : 0));
+            if (name != null) {
+                writeBytes(name);
+            }
+            if (smartphone.getInstalledRam() != null) {
+                final int ram = smartphone.getInstalledRam();
+                writeVarInt((ram << 1) ^ (ram >> 31));
+            }
+            if (smartphone.getCpuSpeed() != null) {
+                writeDouble(smartphone.getCpuSpeed());
+            }
+            if (smartphone.getSmartphoneOs() != null) {
+                writeByte(smartphone.getSmartphoneOs().ordinal());
+            }
+            if (smartphone.getPrice() != null) {
+                writeDouble(smartphone.getPrice());
+            }
+            if (sku != null) {
+                writeBytes(sku);
+            }
+        }
+
+        void writeByte(final int value) {
+            ensureCapacity(1);
+            buffer[position++] = (byte) value;
+        }
+
+        void writeVarInt(final int value) {
+            ensureCapacity(5);
+            int remaining = value;
+            while ((remaining & ~0x7F) != 0) {
+                buffer[position++] = (byte) ((remaining & 0x7F) | 0x80);
+                remaining >>>= 7;
+            }
+            buffer[position++] = (byte) remaining;
+        }
+
+        void writeBytes(final byte[] bytes) {
+            writeVarInt(bytes.length);
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+
+        void writeDouble(final double value) {
+            ensureCapacity(8);
+            final long bits = Double.doubleToRawLongBits(value);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buffer[position++] = (byte) (bits >>> shift);
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, position);
+        }
+
+        private void ensureCapacity(final int extra) {
+            if (position + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + extra));
+            }
+        }
+    }
+
+    private static final class Reader {
+
+        private final ByteBuffer buffer;
+
+        Reader(final ByteBuffer buffer) {
+            if (!buffer.hasRemaining()) {
+                throw new IllegalArgumentException("Empty smartphone payload");
+            }
+            requireVersion(buffer.get());
+            this.buffer = buffer;
+        }
+
+        Smartphone readSmartphone() {
+            final int fields = readByte();
+            final Smartphone smartphone = new Smartphone();
+            if ((fields & NAME) != 0) {
+                smartphone.setName(readString());
+            }
+            if ((fields & RAM) != 0) {
+                final int ram = readVarInt();
+                smartphone.setInstalledRam((ram >>> 1) ^ -(ram & 1));
+            }
+            if ((fields & CPU) != 0) {
+                smartphone.setCpuSpeed(readDouble());
+            }
+            if ((fields & OS) != 0) {
+                final int ordinal = readByte();
+                if (ordinal >= OS_VALUES.length) {
+                    throw new IllegalArgumentException("Unknown smartphone OS ordinal: " + ordinal);
+                }
+                smartphone.setSmartphoneOs(OS_VALUES[ordinal]);
+            }
+            if ((fields & PRICE) != 0) {
+                smartphone.setPrice(readDouble());
+            }
+            if ((fields & SKU) != 0) {
+                smartphone.setSku(readString());
+            }
+            return smartphone;
+        }
+
+        int readByte() {
+            require(1);
+            return buffer.get() & 0xFF;
+        }
+
+        int readVarInt() {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                final int next = readByte();
+                value |= (next & 0x7F) << shift;
+                if ((next & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint in smartphone payload");
+        }
+
+        double readDouble() {
+            require(8);
+            return buffer.getDouble();
+        }
+
+        String readString() {
+            final int length = readVarInt();
+            require(length);
+            if (buffer.hasArray()) {
+                final int offset = buffer.arrayOffset() + buffer.position();
+                buffer.position(buffer.position() + length);
+                return new String(buffer.array(), offset, length, StandardCharsets.UTF_8);
+            }
+            final byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private void require(final int length) {
+            if (length < 0 || length > buffer.remaining()) {
+                throw new IllegalArgumentException("Truncated smartphone payload");
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package ru.autkaev.agents.techretail.smartphone;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Текстовое представление смартфона вида {@code name;ram;cpu;os;price} для аргументов запуска агентов.
+ * <p>
+ * ОС задается именем константы {@link SmartphoneOs} или ее наименованием без учета регистра. Пустое поле оставляет
+ * атрибут незаданным, что удобно для критериев покупателя.
+ *
+ * @author Anton Utkaev
+ * @since 2026.10.18
+ */
+public final class SmartphoneFormat {
+
+    public static final char SEPARATOR = ';';
+
+    private static final int FIELD_COUNT = 5;
+
+    private SmartphoneFormat() {
+    }
+
+    /**
+     * Разбор критериев покупателя.
+     *
+     * @param line
+     *            строка вида {@code name;ram;cpu;os;price}, незаданные поля пустые
+     * @return смартфон с заданными полями
+     * @throws IllegalArgumentException
+     *             если строку не удалось разобрать
+     */
+    public static Smartphone parse(final String line) {
+        final String[] fields = split(line);
+        return new Smartphone().setName(fields[0].isEmpty() ? null : fields[0])
+                .setInstalledRam(fields[1].isEmpty() ? null : parseRam(fields[1]))
+                .setCpuSpeed(fields[2].isEmpty() ? null : parseDouble(fields[2], "CPU speed"))
+                .setSmartphoneOs(fields[3].isEmpty() ? null : parseOs(fields[3]))
+                .setPrice(fields[4].isEmpty() ? null : parseDouble(fields[4], "price"));
+    }
+
+    /**
+     * Разбор товара каталога, у которого, как и при вводе через окно продавца, должны быть заданы все поля.
+     *
+     * @param line
+     *            строка вида {@code name;ram;cpu;os;price}
+     * @return смартфон
+     * @throws IllegalArgumentException
+     *             если строку не удалось разобрать или какое-то поле не задано
+     */
+    public static Smartphone parseCatalogueItem(final String line) {
+        final Smartphone smartphone = parse(line);
+        if (smartphone.getName() == null
+                || smartphone.getInstalledRam() == null
+                || smartphone.getCpuSpeed() == null
+                || smartphone.getSmartphoneOs() == null
+                || smartphone.getPrice() == null) {
+            throw new IllegalArgumentException("All smartphone fields are required: " + line);
+        }
+        return smartphone;
+    }
+
+    public static SmartphoneOs parseOs(final String os) {
+        return Arrays.stream(SmartphoneOs.values())
+                .filter(value -> value.name().equalsIgnoreCase(os) || value.getOsName().equalsIgnoreCase(os))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown smartphone OS: " + os));
+    }
+
+    private static String[] split(final String line) {
+        Objects.requireNonNull(line, "Smartphone line is null");
+        final String[] fields = new String[FIELD_COUNT];
+        int start = 0;
+        for (int i = 0; i < FIELD_COUNT - 1; i++) {
+            final int end = line.indexOf(SEPARATOR, start);
+            if (end < 0) {
+                throw new IllegalArgumentException("Expected name;ram;cpu;os;price but got: " + line);
+            }
+            fields[i] = line.substring(start, end).trim();
+            start = end + 1;
+        }
+        fields[FIELD_COUNT - 1] = line.substring(start).trim();
+        return fields;
+    }
+
+    private static Integer parseRam(final String ram) {
+        try {
+            return Integer.valueOf(ram);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid installed RAM: " + ram, e);
+        }
+    }
+
+    private static Double parseDouble(final String value, final String field) {
+        try {
+            return Double.valueOf(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + field + ": " + value, e);
+        }
+    }
+}
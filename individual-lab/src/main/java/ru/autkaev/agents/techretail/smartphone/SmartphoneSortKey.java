@@ -0,0 +1,38 @@
+package ru.autkaev.agents.techretail.smartphone;
+
+import java.util.Comparator;
+
+/**
+ * Порядок ранжирования смартфонов в ответе продавца. Лучшие предложения идут первыми, смартфоны без значения
+ * атрибута - в конце.
+ *
+ * @author Anton Utkaev
+ * @since 2026.10.18
+ */
+public enum SmartphoneSortKey {
+
+    /**
+     * Сначала самые дешевые.
+     */
+    PRICE(Comparator.comparing(Smartphone::getPrice, Comparator.nullsLast(Comparator.naturalOrder()))),
+
+    /**
+     * Сначала с наибольшим объемом памяти.
+     */
+    RAM(Comparator.comparing(Smartphone::getInstalledRam, Comparator.nullsLast(Comparator.reverseOrder()))),
+
+    /**
+     * Сначала с самым быстрым процессором.
+     */
+    CPU(Comparator.comparing(Smartphone::getCpuSpeed, Comparator.nullsLast(Comparator.reverseOrder())));
+
+    private final Comparator<Smartphone> comparator;
+
+    SmartphoneSortKey(final Comparator<Smartphone> comparator) {
+        this.comparator = comparator;
+    }
+
+    public Comparator<Smartphone> getComparator() {
+        return comparator;
+    }
+}